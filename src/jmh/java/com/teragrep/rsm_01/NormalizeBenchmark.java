@@ -0,0 +1,155 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded normalization of a message that matches a rule, and of a message that doesn't match any rule.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({
+        Mode.Throughput, Mode.SampleTime
+})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(
+        iterations = 3,
+        time = 2
+)
+@Measurement(
+        iterations = 5,
+        time = 2
+)
+// Logging of failed normalizations is disabled to keep the benchmark output readable.
+@Fork(
+        value = 1,
+        jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=off"
+)
+public class NormalizeBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({
+            "10", "8000"
+    })
+    public int rules;
+
+    @Param({
+            "proxy", "direct"
+    })
+    public String binding;
+
+    private JavaLognormImpl javaLognormImpl;
+    private String matchingMessage;
+    private String unmatchedMessage;
+    private String[] batch;
+    private String[] batchOut;
+
+    @Setup
+    public void setup() {
+        final GeneratedRulebase generatedRulebase = new GeneratedRulebase(rules);
+        final LognormBinding lognormBinding;
+        if ("direct".equals(binding)) {
+            lognormBinding = new DirectLognormBinding();
+        }
+        else {
+            lognormBinding = new ProxyLognormBinding();
+        }
+        final LognormFactory lognormFactory = new LognormFactory(
+                new LibJavaLognorm.OptionsStruct(),
+                generatedRulebase.rulebase(),
+                false,
+                lognormBinding
+        );
+        javaLognormImpl = lognormFactory.lognorm();
+        matchingMessage = generatedRulebase.matchingMessage();
+        unmatchedMessage = generatedRulebase.unmatchedMessage();
+        batch = new String[BATCH_SIZE];
+        Arrays.fill(batch, matchingMessage);
+        batchOut = new String[BATCH_SIZE];
+    }
+
+    @TearDown
+    public void tearDown() {
+        javaLognormImpl.close();
+    }
+
+    @Benchmark
+    public String normalize() {
+        return javaLognormImpl.normalize(matchingMessage);
+    }
+
+    @Benchmark
+    public String normalizeUnmatched() {
+        try {
+            return javaLognormImpl.normalize(unmatchedMessage);
+        }
+        catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int[] normalizeBatch() {
+        return javaLognormImpl.normalizeBatch(batch, batchOut);
+    }
+}
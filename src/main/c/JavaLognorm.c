@@ -43,7 +43,10 @@
  * Teragrep, the applicable Commercial License may apply to this file if you as
  * a licensee so wish it.
  */
+#include <errno.h>
 #include <stddef.h>
+#include <stdint.h>
+#include <stdlib.h>
 #include <string.h>
 #include <liblognorm.h>
 #include <lognorm.h>
@@ -67,21 +70,76 @@ const char *version() {
     return ln_version();
 }
 
+// Handle given to java in place of the bare context. Several handles can share the same context and its loaded
+// rulebase, the context is exited when the last handle referring to it is exited.
+typedef struct CtxHandle_TAG {
+    ln_ctx ctx; // Must be the first member, entry points dereference the handle as ln_ctx *.
+    int *references;
+    // Fields kept in successful results, NULL keeps every field. Shared by the handles of the context.
+    struct json_object *projection;
+    // Serialization of results written by normalizeBuffer(), one of the RESULT_FORMAT_* values.
+    int format;
+    // NUL-terminated copy of the last message given to normalizeSlice(), owned by the handle.
+    char *scratch;
+    size_t scratchCapacity;
+}CtxHandle;
+
+#define RESULT_FORMAT_JSON 0
+#define RESULT_FORMAT_MESSAGEPACK 1
+
 void *initCtx() {
-    ln_ctx *ctx = malloc(sizeof(ln_ctx));
-    if((*ctx = ln_initCtx()) == NULL) {
+    CtxHandle *handle = malloc(sizeof(CtxHandle));
+    if (handle == NULL) {
+        return NULL;
+    }
+    handle->references = malloc(sizeof(int));
+    if (handle->references == NULL) {
+        free(handle);
+        return NULL;
+    }
+    if((handle->ctx = ln_initCtx()) == NULL) {
         // Exception handling is done in java. ln_initCtx() is designed to return null if error occurred.
+        free(handle->references);
+        free(handle);
+        return NULL;
+    }
+    *handle->references = 1;
+    handle->projection = NULL;
+    handle->format = RESULT_FORMAT_JSON;
+    handle->scratch = NULL;
+    handle->scratchCapacity = 0;
+    return handle;
+}
+
+void *shareCtx(CtxHandle *parent) {
+    CtxHandle *handle = malloc(sizeof(CtxHandle));
+    if (handle == NULL) {
         return NULL;
     }
-    return ctx;
+    handle->ctx = parent->ctx;
+    handle->references = parent->references;
+    handle->projection = parent->projection;
+    handle->format = parent->format;
+    handle->scratch = NULL;
+    handle->scratchCapacity = 0;
+    __atomic_add_fetch(handle->references, 1, __ATOMIC_SEQ_CST);
+    return handle;
 }
 
-int exitCtx(ln_ctx *context) {
-    int rv = -1;
-    if (*context) {
-        rv = ln_exitCtx(*context);
+int exitCtx(CtxHandle *handle) {
+    int rv = 0;
+    if (__atomic_sub_fetch(handle->references, 1, __ATOMIC_SEQ_CST) == 0) {
+        rv = -1;
+        if (handle->ctx) {
+            rv = ln_exitCtx(handle->ctx);
+        }
+        if (handle->projection != NULL) {
+            json_object_put(handle->projection);
+        }
+        free(handle->references);
     }
-    free(context);
+    free(handle->scratch);
+    free(handle);
     return rv;
 }
 
@@ -99,6 +157,189 @@ void setCtxOpts(ln_ctx *ctx, OptionsStruct *opts) {
     ln_setCtxOpts(*ctx, ctxOpts);
 }
 
+// Projection is kept as a template object holding the selected field names, where a null value selects the whole
+// field and an object value selects fields of the nested object. Must be set before the context is shared.
+int setProjection(CtxHandle *handle, char **names, int *depths, int count) {
+    struct json_object *template = json_object_new_object();
+    if (template == NULL) {
+        return -1;
+    }
+    int offset = 0;
+    for (int i = 0; i < count; i++) {
+        struct json_object *node = template;
+        for (int j = 0; j < depths[i]; j++) {
+            const char *key = names[offset + j];
+            struct json_object *child = NULL;
+            int exists = json_object_object_get_ex(node, key, &child);
+            if (exists && child == NULL) {
+                // Whole field is already selected by a shorter path
+                break;
+            }
+            if (j == depths[i] - 1) {
+                json_object_object_add(node, key, NULL);
+            } else {
+                if (!exists) {
+                    child = json_object_new_object();
+                    json_object_object_add(node, key, child);
+                }
+                node = child;
+            }
+        }
+        offset += depths[i];
+    }
+    if (handle->projection != NULL) {
+        json_object_put(handle->projection);
+    }
+    handle->projection = template;
+    return 0;
+}
+
+static struct json_object *projectObject(struct json_object *source, struct json_object *template) {
+    struct json_object *projected = json_object_new_object();
+    json_object_object_foreach(template, key, selection) {
+        struct json_object *value;
+        if (!json_object_object_get_ex(source, key, &value)) {
+            continue;
+        }
+        if (selection == NULL) {
+            json_object_object_add(projected, key, json_object_get(value));
+        } else if (json_object_get_type(value) == json_type_object) {
+            json_object_object_add(projected, key, projectObject(value, selection));
+        }
+    }
+    return projected;
+}
+
+// Prunes a successful result to the projected fields before it is serialized or read. Error information is kept whole.
+static struct json_object *project(CtxHandle *handle, struct json_object *jobj, int rv) {
+    if (handle->projection == NULL || rv != 0 || jobj == NULL) {
+        return jobj;
+    }
+    struct json_object *projected = projectObject(jobj, handle->projection);
+    json_object_put(jobj);
+    return projected;
+}
+
+int setResultFormat(CtxHandle *handle, int format) {
+    if (format != RESULT_FORMAT_JSON && format != RESULT_FORMAT_MESSAGEPACK) {
+        return -1;
+    }
+    handle->format = format;
+    return 0;
+}
+
+// Output of the MessagePack encoder. Bytes that do not fit into the capacity are counted but not written, so that the
+// required capacity is known after encoding.
+typedef struct PackBuffer_TAG {
+    unsigned char *out;
+    size_t capacity;
+    size_t length;
+}PackBuffer;
+
+static void packBytes(PackBuffer *buffer, const void *bytes, size_t count) {
+    if (buffer->length + count <= buffer->capacity) {
+        memcpy(buffer->out + buffer->length, bytes, count);
+    }
+    buffer->length += count;
+}
+
+static void packByte(PackBuffer *buffer, unsigned char byte) {
+    packBytes(buffer, &byte, 1);
+}
+
+// Writes the type byte followed by the value in big-endian byte order.
+static void packBigEndian(PackBuffer *buffer, unsigned char type, uint64_t value, int size) {
+    unsigned char bytes[9];
+    bytes[0] = type;
+    for (int i = 0; i < size; i++) {
+        bytes[size - i] = (unsigned char) (value >> (8 * i));
+    }
+    packBytes(buffer, bytes, (size_t) size + 1);
+}
+
+static void packLength(PackBuffer *buffer, size_t length, unsigned char fix, size_t fixMax, unsigned char type8, unsigned char type16) {
+    if (length <= fixMax) {
+        packByte(buffer, (unsigned char) (fix | length));
+    } else if (type8 != 0 && length <= UINT8_MAX) {
+        packBigEndian(buffer, type8, length, 1);
+    } else if (length <= UINT16_MAX) {
+        packBigEndian(buffer, type16, length, 2);
+    } else {
+        packBigEndian(buffer, (unsigned char) (type16 + 1), length, 4);
+    }
+}
+
+static void packString(PackBuffer *buffer, const char *string, size_t length) {
+    packLength(buffer, length, 0xa0, 31, 0xd9, 0xda);
+    packBytes(buffer, string, length);
+}
+
+static void packInt(PackBuffer *buffer, int64_t value) {
+    if (value >= 0) {
+        if (value <= 127) {
+            packByte(buffer, (unsigned char) value);
+        } else if (value <= UINT8_MAX) {
+            packBigEndian(buffer, 0xcc, (uint64_t) value, 1);
+        } else if (value <= UINT16_MAX) {
+            packBigEndian(buffer, 0xcd, (uint64_t) value, 2);
+        } else if (value <= UINT32_MAX) {
+            packBigEndian(buffer, 0xce, (uint64_t) value, 4);
+        } else {
+            packBigEndian(buffer, 0xcf, (uint64_t) value, 8);
+        }
+    } else if (value >= -32) {
+        packByte(buffer, (unsigned char) (int8_t) value);
+    } else if (value >= INT8_MIN) {
+        packBigEndian(buffer, 0xd0, (uint64_t) value, 1);
+    } else if (value >= INT16_MIN) {
+        packBigEndian(buffer, 0xd1, (uint64_t) value, 2);
+    } else if (value >= INT32_MIN) {
+        packBigEndian(buffer, 0xd2, (uint64_t) value, 4);
+    } else {
+        packBigEndian(buffer, 0xd3, (uint64_t) value, 8);
+    }
+}
+
+static void packObject(PackBuffer *buffer, struct json_object *jobj) {
+    switch (json_object_get_type(jobj)) {
+        case json_type_boolean:
+            packByte(buffer, json_object_get_boolean(jobj) ? 0xc3 : 0xc2);
+            break;
+        case json_type_double: {
+            double value = json_object_get_double(jobj);
+            uint64_t bits;
+            memcpy(&bits, &value, sizeof(bits));
+            packBigEndian(buffer, 0xcb, bits, 8);
+            break;
+        }
+        case json_type_int:
+            packInt(buffer, json_object_get_int64(jobj));
+            break;
+        case json_type_string:
+            packString(buffer, json_object_get_string(jobj), (size_t) json_object_get_string_len(jobj));
+            break;
+        case json_type_array: {
+            size_t length = json_object_array_length(jobj);
+            packLength(buffer, length, 0x90, 15, 0, 0xdc);
+            for (size_t i = 0; i < length; i++) {
+                packObject(buffer, json_object_array_get_idx(jobj, i));
+            }
+            break;
+        }
+        case json_type_object: {
+            packLength(buffer, (size_t) json_object_object_length(jobj), 0x80, 15, 0, 0xde);
+            json_object_object_foreach(jobj, key, value) {
+                packString(buffer, key, strlen(key));
+                packObject(buffer, value);
+            }
+            break;
+        }
+        default:
+            packByte(buffer, 0xc0);
+            break;
+    }
+}
+
 int loadSamples(ln_ctx *context, char *filename) {
     return ln_loadSamples(*context, filename);
 }
@@ -111,10 +352,11 @@ int hasAdvancedStats() {
     return ln_hasAdvancedStats();
 }
 
-NormalizedStruct* normalize(ln_ctx *context, char *line, NormalizedStruct* norm) {
-    ln_ctx ctx = *context;
+NormalizedStruct* normalize(CtxHandle *handle, char *line, NormalizedStruct* norm) {
+    ln_ctx ctx = handle->ctx;
     struct json_object *jobj = json_object_new_object();
     int i = ln_normalize(ctx, line, strlen(line), &jobj);
+    jobj = project(handle, jobj, i);
     norm->rv = i;
     if (jobj == NULL) {
        // jobj was null, create new generic jobj for error logging.
@@ -128,6 +370,19 @@ NormalizedStruct* normalize(ln_ctx *context, char *line, NormalizedStruct* norm)
     return norm;
 }
 
+struct json_object *normalizeRef(CtxHandle *handle, const char *line, int *rv) {
+    ln_ctx ctx = handle->ctx;
+    struct json_object *jobj = json_object_new_object();
+    *rv = ln_normalize(ctx, line, strlen(line), &jobj);
+    jobj = project(handle, jobj, *rv);
+    if (jobj == NULL) {
+       // jobj was null, create new generic jobj for error logging.
+       jobj = json_object_new_object();
+       json_object_object_add(jobj, "Error", json_object_new_string("Error occurred during ln_normalize()"));
+    }
+    return jobj;
+}
+
 char *readResult(struct json_object *jref) {
     return (char*)json_object_to_json_string(jref);
 }
@@ -136,6 +391,303 @@ void destroyResult(struct json_object *jref) {
     json_object_put(jref);
 }
 
+// Serializes the result into out in the result format of the handle and returns its length. A json result that does
+// not fit into outCapacity is not written at all, a MessagePack result may be written partially.
+static size_t writeResult(CtxHandle *handle, struct json_object *jobj, char *out, int outCapacity) {
+    if (handle->format == RESULT_FORMAT_MESSAGEPACK) {
+        PackBuffer buffer = { (unsigned char *) out, (size_t) outCapacity, 0 };
+        packObject(&buffer, jobj);
+        return buffer.length;
+    }
+    const char *json = json_object_to_json_string(jobj);
+    size_t length = strlen(json);
+    if (length <= (size_t) outCapacity) {
+        memcpy(out, json, length);
+    }
+    return length;
+}
+
+// Normalizes inLength bytes of in and returns the result like normalizeRef() does. in must be NUL-terminated at
+// inLength, see normalizeSlice().
+static struct json_object *normalizeBufferRef(CtxHandle *handle, const char *in, int inLength, int *rv) {
+    ln_ctx ctx = handle->ctx;
+    struct json_object *jobj = json_object_new_object();
+    *rv = ln_normalize(ctx, in, (size_t) inLength, &jobj);
+    jobj = project(handle, jobj, *rv);
+    if (jobj == NULL) {
+        // jobj was null, create new generic jobj for error logging like normalize() does, serialized in the result format.
+        jobj = json_object_new_object();
+        json_object_object_add(jobj, "Error", json_object_new_string("Error occurred during ln_normalize()"));
+    }
+    return jobj;
+}
+
+// in must be NUL-terminated at inLength, see normalizeSlice().
+int normalizeBuffer(CtxHandle *handle, const char *in, int inLength, char *out, int outCapacity, int *outLength) {
+    int rv;
+    struct json_object *jobj = normalizeBufferRef(handle, in, inLength, &rv);
+    *outLength = (int) writeResult(handle, jobj, out, outCapacity);
+    json_object_put(jobj);
+    return rv;
+}
+
+// Like normalizeBuffer(), but a result that does not fit into outCapacity is not destroyed. It is written to kept
+// instead, to be serialized into a larger buffer with serializeResult() and destroyed with destroyResult(), so that the
+// message is not normalized again. kept is set to NULL when the result fit.
+int normalizeBufferKeep(CtxHandle *handle, const char *in, int inLength, char *out, int outCapacity, int *outLength,
+        struct json_object **kept) {
+    int rv;
+    struct json_object *jobj = normalizeBufferRef(handle, in, inLength, &rv);
+    size_t length = writeResult(handle, jobj, out, outCapacity);
+    *outLength = (int) length;
+    if (length > (size_t) outCapacity) {
+        *kept = jobj;
+    } else {
+        *kept = NULL;
+        json_object_put(jobj);
+    }
+    return rv;
+}
+
+// Serializes a result of normalizeRef() like normalizeBuffer() does, without destroying it, so that a result that did
+// not fit can be serialized again into a larger buffer without normalizing the message again.
+int serializeResult(CtxHandle *handle, struct json_object *jref, char *out, int outCapacity) {
+    return (int) writeResult(handle, jref, out, outCapacity);
+}
+
+// liblognorm reads the message up to a NUL instead of inLength when it adds originalmsg and unparsed-data to the
+// result of a failed normalization, so a message that is not NUL-terminated is copied and terminated first. The result
+// of a failed normalization is also written to error, to be read with readResult() and destroyed with destroyResult()
+// whatever the result format is, and error is set to NULL otherwise.
+int normalizeSlice(CtxHandle *handle, const char *in, int inLength, char *out, int outCapacity, int *outLength,
+        struct json_object **error) {
+    *outLength = 0;
+    *error = NULL;
+    size_t required = (size_t) inLength + 1;
+    if (required > handle->scratchCapacity) {
+        size_t capacity = handle->scratchCapacity * 2 > required ? handle->scratchCapacity * 2 : required;
+        char *scratch = realloc(handle->scratch, capacity);
+        if (scratch == NULL) {
+            return -1;
+        }
+        handle->scratch = scratch;
+        handle->scratchCapacity = capacity;
+    }
+    memcpy(handle->scratch, in, (size_t) inLength);
+    handle->scratch[inLength] = '\0';
+    int rv;
+    struct json_object *jobj = normalizeBufferRef(handle, handle->scratch, inLength, &rv);
+    *outLength = (int) writeResult(handle, jobj, out, outCapacity);
+    if (rv != 0) {
+        *error = jobj;
+    } else {
+        json_object_put(jobj);
+    }
+    return rv;
+}
+
+static char *copyString(const char *string) {
+    size_t length = strlen(string) + 1;
+    char *copy = malloc(length);
+    if (copy != NULL) {
+        memcpy(copy, string, length);
+    }
+    return copy;
+}
+
+int normalizeBatch(CtxHandle *handle, char **lines, int count, int *rvs, char **results) {
+    ln_ctx ctx = handle->ctx;
+    int failures = 0;
+    for (int i = 0; i < count; i++) {
+        struct json_object *jobj = json_object_new_object();
+        rvs[i] = ln_normalize(ctx, lines[i], strlen(lines[i]), &jobj);
+        jobj = project(handle, jobj, rvs[i]);
+        if (jobj == NULL) {
+            // jobj was null, return generic error information like normalize() does.
+            results[i] = copyString("{ \"Error\": \"Error occurred during ln_normalize()\" }");
+        } else {
+            results[i] = copyString(json_object_to_json_string(jobj));
+            json_object_put(jobj);
+        }
+        if (rvs[i] != 0) {
+            failures++;
+        }
+    }
+    return failures;
+}
+
+void destroyBatchResults(char **results, int count) {
+    for (int i = 0; i < count; i++) {
+        free(results[i]);
+    }
+}
+
+struct json_object *recordField(struct json_object *jref, char **path, int depth) {
+    struct json_object *field = jref;
+    for (int i = 0; i < depth; i++) {
+        if (json_object_get_type(field) != json_type_object || !json_object_object_get_ex(field, path[i], &field)) {
+            return NULL;
+        }
+    }
+    return field;
+}
+
+int recordType(struct json_object *field) {
+    return json_object_get_type(field);
+}
+
+const char *recordString(struct json_object *field) {
+    return json_object_get_string(field);
+}
+
+int recordLong(struct json_object *field, int64_t *value) {
+    switch (json_object_get_type(field)) {
+        case json_type_int:
+            *value = json_object_get_int64(field);
+            return 0;
+        case json_type_string: {
+            // Number parsers of liblognorm produce strings unless the rule requests otherwise.
+            const char *string = json_object_get_string(field);
+            char *end;
+            errno = 0;
+            long long parsed = strtoll(string, &end, 10);
+            if (errno != 0 || end == string || *end != '\0') {
+                return -1;
+            }
+            *value = parsed;
+            return 0;
+        }
+        default:
+            return -1;
+    }
+}
+
+int recordDouble(struct json_object *field, double *value) {
+    switch (json_object_get_type(field)) {
+        case json_type_int:
+        case json_type_double:
+            *value = json_object_get_double(field);
+            return 0;
+        case json_type_string: {
+            const char *string = json_object_get_string(field);
+            char *end;
+            errno = 0;
+            double parsed = strtod(string, &end);
+            if (errno != 0 || end == string || *end != '\0') {
+                return -1;
+            }
+            *value = parsed;
+            return 0;
+        }
+        default:
+            return -1;
+    }
+}
+
+int recordFieldCount(struct json_object *field) {
+    if (json_object_get_type(field) != json_type_object) {
+        return 0;
+    }
+    return json_object_object_length(field);
+}
+
+int recordFieldNames(struct json_object *field, const char **names, int capacity) {
+    int count = 0;
+    if (json_object_get_type(field) != json_type_object) {
+        return count;
+    }
+    json_object_object_foreach(field, key, value) {
+        (void) value;
+        if (count >= capacity) {
+            break;
+        }
+        names[count++] = key;
+    }
+    return count;
+}
+
+#define COLUMN_STRING 0
+#define COLUMN_LONG 1
+#define COLUMN_DOUBLE 2
+
+// Normalizes a batch and writes the top level fields named by columns into column vectors. Each column has a validity
+// bitmap of (count + 7) / 8 bytes where a set bit marks a non-null row. slots[j] tells the index of column j among the
+// columns of its type. Long and double columns take count values each, string columns take count + 1 offsets into
+// data, and the strings of a column are stored one after another. If the strings do not fit into dataCapacity bytes,
+// dataLength tells the required capacity. Returns the amount of messages that failed normalization.
+int normalizeColumns(CtxHandle *handle, char **lines, int count, char **columns, int *types, int *slots, int columnCount,
+        int *rvs, unsigned char *validity, int64_t *longs, double *doubles, int *offsets, char *data, int dataCapacity,
+        int *dataLength) {
+    ln_ctx ctx = handle->ctx;
+    struct json_object **results = calloc((size_t) count > 0 ? (size_t) count : 1, sizeof(struct json_object *));
+    if (results == NULL) {
+        return -1;
+    }
+    int failures = 0;
+    for (int i = 0; i < count; i++) {
+        struct json_object *jobj = json_object_new_object();
+        rvs[i] = ln_normalize(ctx, lines[i], strlen(lines[i]), &jobj);
+        if (rvs[i] != 0) {
+            failures++;
+            if (jobj != NULL) {
+                json_object_put(jobj);
+            }
+            jobj = NULL;
+        }
+        results[i] = jobj;
+    }
+    size_t bitmapBytes = ((size_t) count + 7) / 8;
+    memset(validity, 0, bitmapBytes * (size_t) columnCount);
+    size_t length = 0;
+    for (int j = 0; j < columnCount; j++) {
+        unsigned char *bitmap = validity + bitmapBytes * (size_t) j;
+        int64_t *longColumn = longs + (size_t) slots[j] * (size_t) count;
+        double *doubleColumn = doubles + (size_t) slots[j] * (size_t) count;
+        int *offsetColumn = offsets + (size_t) slots[j] * ((size_t) count + 1);
+        if (types[j] == COLUMN_STRING) {
+            offsetColumn[0] = (int) length;
+        }
+        for (int i = 0; i < count; i++) {
+            struct json_object *value = NULL;
+            int found = results[i] != NULL && json_object_object_get_ex(results[i], columns[j], &value) && value != NULL;
+            int valid = 0;
+            switch (types[j]) {
+                case COLUMN_LONG:
+                    longColumn[i] = 0;
+                    valid = found && recordLong(value, &longColumn[i]) == 0;
+                    break;
+                case COLUMN_DOUBLE:
+                    doubleColumn[i] = 0;
+                    valid = found && recordDouble(value, &doubleColumn[i]) == 0;
+                    break;
+                default:
+                    if (found) {
+                        const char *string = json_object_get_string(value);
+                        size_t stringLength = strlen(string);
+                        if (length + stringLength <= (size_t) dataCapacity) {
+                            memcpy(data + length, string, stringLength);
+                        }
+                        length += stringLength;
+                        valid = 1;
+                    }
+                    offsetColumn[i + 1] = (int) length;
+                    break;
+            }
+            if (valid) {
+                bitmap[i / 8] |= (unsigned char) (1 << (i % 8));
+            }
+        }
+    }
+    for (int i = 0; i < count; i++) {
+        if (results[i] != NULL) {
+            json_object_put(results[i]);
+        }
+    }
+    free(results);
+    *dataLength = (int) length;
+    return failures;
+}
+
 void enableDebug(ln_ctx *ctx, int i) {
     ln_enableDebug(*ctx, i);
 }
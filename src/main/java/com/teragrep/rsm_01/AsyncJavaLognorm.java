@@ -0,0 +1,144 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous normalization on a fixed set of dedicated platform threads, each owning a liblognorm context of its own
+ * created from the LognormSource. Blocking native calls happen only on the dedicated threads, so callers such as
+ * virtual threads or event loops are never pinned by the native library. Submission never blocks: when the bounded
+ * queue of pending normalizations is full, the returned future is completed exceptionally with a
+ * RejectedExecutionException.
+ */
+public final class AsyncJavaLognorm implements AutoCloseable {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private final ThreadPoolExecutor executor;
+    private final WorkerContexts workerContexts;
+
+    public AsyncJavaLognorm(final LognormSource lognormSource) {
+        this(lognormSource, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public AsyncJavaLognorm(final LognormSource lognormSource, final int threads, final int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "Threads and queue capacity must be at least 1, got " + threads + " and " + queueCapacity
+            );
+        }
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new NormalizerThreadFactory("rsm_01-async"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.workerContexts = new WorkerContexts(lognormSource);
+    }
+
+    /**
+     * Normalize a message asynchronously.
+     *
+     * @param text The message string to normalize
+     * @return future of the normalized message as a JSON string object, completed exceptionally with an
+     *         IllegalArgumentException if normalization fails or with a RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<String> normalizeAsync(final String text) {
+        return submit(() -> workerContexts.get().normalize(text));
+    }
+
+    /**
+     * Normalize a batch of messages asynchronously with a single task on one of the worker threads.
+     *
+     * @param texts The message strings to normalize
+     * @return future of the normalized messages as JSON string objects, in the same order as the input
+     */
+    public CompletableFuture<List<String>> normalizeBatchAsync(final List<String> texts) {
+        return submit(() -> workerContexts.get().normalizeBatch(texts));
+    }
+
+    /**
+     * Returns the amount of normalizations waiting for a worker thread.
+     *
+     * @return amount of queued normalizations.
+     */
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    private <T> CompletableFuture<T> submit(final Supplier<T> normalization) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(normalization, executor);
+        }
+        catch (RejectedExecutionException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Stops accepting normalizations, waits for the queued ones to finish and closes the contexts of the worker
+     * threads.
+     *
+     * @throws IllegalArgumentException Throws if closing a context fails.
+     */
+    @Override
+    public void close() throws IllegalArgumentException {
+        workerContexts.close(executor);
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JavaLognorm decorator that keeps the normalization results of recently seen messages in a bounded least recently used
+ * cache. Messages that failed normalization are cached as well, so repeated unparseable messages fail without a call to
+ * the native library. The cache is bounded both by the amount of entries and by their estimated weight in bytes, and is
+ * safe to use from multiple threads if the decorated JavaLognorm is.
+ * <p>
+ * Large caches are split into segments by the hash of the message, each with its own lock and an even share of the
+ * bounds, so that concurrent hits don't wait for each other. The least recently used order is kept per segment. A
+ * result heavier than the weight bound of its segment is returned but not cached, so that it can't evict the other
+ * entries.
+ * <p>
+ * Cached results are not tied to a rulebase. When the decorated JavaLognorm is a ReloadableJavaLognorm, results of the
+ * previous rulebase are served until they are evicted, unless the cache is emptied with clear() after reload().
+ */
+public final class CachingJavaLognorm implements JavaLognorm {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingJavaLognorm.class);
+
+    // Estimated bytes used by the map entry, the CachedResult and the String objects themselves.
+    private static final long ENTRY_OVERHEAD = 128L;
+    private static final int MAX_SEGMENTS = 16;
+    // Smallest amount of entries per segment, smaller caches are not split so that their order stays exact.
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+    // Mixes the high bits of the hash into the index of the segment.
+    private static final int HASH_SHIFT = 16;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final JavaLognorm javaLognorm;
+    private final Segment[] segments;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public CachingJavaLognorm(final JavaLognorm javaLognorm, final int maxEntries) {
+        this(javaLognorm, maxEntries, Long.MAX_VALUE);
+    }
+
+    public CachingJavaLognorm(final JavaLognorm javaLognorm, final int maxEntries, final long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException(
+                    "Cache bounds must be positive, got maxEntries " + maxEntries + " and maxWeight " + maxWeight
+            );
+        }
+        this.javaLognorm = javaLognorm;
+        final int segmentCount = Integer
+                .highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxEntries / MIN_SEGMENT_ENTRIES)));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxEntries / segmentCount, maxWeight / segmentCount);
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    @Override
+    public String normalize(final String text) {
+        final String[] out = new String[1];
+        final int[] rvs = normalizeBatch(new String[] {
+                text
+        }, out);
+        if (rvs[0] != 0) {
+            LOGGER
+                    .error(
+                            "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
+                            rvs[0], out[0]
+                    );
+            throw new IllegalArgumentException(
+                    "ln_normalize() failed to perform extraction with error code: " + rvs[0]
+            );
+        }
+        return out[0];
+    }
+
+    @Override
+    public List<String> normalizeBatch(final List<String> texts) {
+        final String[] out = new String[texts.size()];
+        final int[] rvs = normalizeBatch(texts.toArray(new String[0]), out);
+        for (int i = 0; i < rvs.length; i++) {
+            if (rvs[i] != 0) {
+                LOGGER
+                        .error(
+                                "ln_normalize() failed to perform extraction of message at index <{}> with error code <{}>. Generated error information: <{}>",
+                                i, rvs[i], out[i]
+                        );
+                throw new IllegalArgumentException(
+                        "ln_normalize() failed to perform extraction with error code: " + rvs[i]
+                                + " for message at index: " + i
+                );
+            }
+        }
+        return Arrays.asList(out);
+    }
+
+    @Override
+    public int[] normalizeBatch(final String[] texts, final String[] out) {
+        if (out.length < texts.length) {
+            throw new IllegalArgumentException(
+                    "Output array length " + out.length + " is smaller than the amount of messages " + texts.length
+            );
+        }
+        final int[] rvs = new int[texts.length];
+        final List<Integer> missed = new ArrayList<>();
+        for (int i = 0; i < texts.length; i++) {
+            final CachedResult cachedResult = segment(texts[i]).get(texts[i]);
+            if (cachedResult == null) {
+                missed.add(i);
+            }
+            else {
+                rvs[i] = cachedResult.returnCode();
+                out[i] = cachedResult.result();
+            }
+        }
+        hits.add(texts.length - missed.size());
+        misses.add(missed.size());
+        if (!missed.isEmpty()) {
+            normalizeMissed(texts, missed, rvs, out);
+        }
+        return rvs;
+    }
+
+    /**
+     * Normalizes the messages that were not found from the cache with the decorated JavaLognorm, and caches the
+     * results.
+     */
+    private void normalizeMissed(
+            final String[] texts,
+            final List<Integer> missed,
+            final int[] rvs,
+            final String[] out
+    ) {
+        final String[] missedTexts = new String[missed.size()];
+        for (int i = 0; i < missedTexts.length; i++) {
+            missedTexts[i] = texts[missed.get(i)];
+        }
+        final String[] missedOut = new String[missedTexts.length];
+        final int[] missedRvs = javaLognorm.normalizeBatch(missedTexts, missedOut);
+        for (int i = 0; i < missedTexts.length; i++) {
+            // Failures are return codes handled by the caller, the throwing methods log them as errors
+            if (missedRvs[i] != 0 && LOGGER.isDebugEnabled()) {
+                LOGGER
+                        .debug(
+                                "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
+                                missedRvs[i], missedOut[i]
+                        );
+            }
+            rvs[missed.get(i)] = missedRvs[i];
+            out[missed.get(i)] = missedOut[i];
+            segment(missedTexts[i]).put(missedTexts[i], new CachedResult(missedRvs[i], missedOut[i], missedTexts[i]));
+        }
+    }
+
+    private Segment segment(final String text) {
+        final int hash = text.hashCode();
+        return segments[(hash ^ (hash >>> HASH_SHIFT)) & (segments.length - 1)];
+    }
+
+    /**
+     * Removes all the entries from the cache, for example after the rulebase of the decorated JavaLognorm has been
+     * reloaded. Removed entries are not counted as evictions.
+     */
+    public void clear() {
+        for (final Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return amount of messages whose result was found from the cache.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return amount of messages whose result was not found from the cache.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return amount of entries removed from the cache to keep it within its bounds.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return amount of entries in the cache.
+     */
+    public int size() {
+        int size = 0;
+        for (final Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated weight of the cached entries in bytes.
+     */
+    public long weight() {
+        long weight = 0L;
+        for (final Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * Least recently used map of a share of the messages, guarded by its own lock.
+     */
+    private final class Segment {
+
+        private final int maxEntries;
+        private final long maxWeight;
+        private final Map<String, CachedResult> cache;
+        private long weight;
+
+        private Segment(final int maxEntries, final long maxWeight) {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+            this.cache = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+            this.weight = 0L;
+        }
+
+        private synchronized CachedResult get(final String text) {
+            return cache.get(text);
+        }
+
+        private synchronized void put(final String text, final CachedResult cachedResult) {
+            // A result heavier than the bound would evict every other entry of the segment, and then itself
+            if (cachedResult.weight() <= maxWeight) {
+                final CachedResult previous = cache.put(text, cachedResult);
+                if (previous != null) {
+                    weight -= previous.weight();
+                }
+                weight += cachedResult.weight();
+                evict();
+            }
+        }
+
+        /**
+         * Removes least recently used entries until the segment is within its bounds.
+         */
+        private void evict() {
+            final Iterator<Map.Entry<String, CachedResult>> iterator = cache.entrySet().iterator();
+            while ((cache.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+                weight -= iterator.next().getValue().weight();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+
+        private synchronized void clear() {
+            cache.clear();
+            weight = 0L;
+        }
+
+        private synchronized int size() {
+            return cache.size();
+        }
+
+        private synchronized long weight() {
+            return weight;
+        }
+    }
+
+    private static final class CachedResult {
+
+        private final int returnCode;
+        private final String result;
+        private final long weight;
+
+        private CachedResult(final int returnCode, final String result, final String text) {
+            this.returnCode = returnCode;
+            this.result = result;
+            // Strings are estimated to use two bytes per character.
+            this.weight = ENTRY_OVERHEAD + 2L * (text.length() + result.length());
+        }
+
+        private int returnCode() {
+            return returnCode;
+        }
+
+        private String result() {
+            return result;
+        }
+
+        private long weight() {
+            return weight;
+        }
+    }
+}
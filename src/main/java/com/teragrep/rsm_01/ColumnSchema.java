@@ -0,0 +1,116 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ordered set of the top level fields that columnar batch normalization extracts, and the type of each column.
+ */
+public final class ColumnSchema {
+
+    // %name:type% or %name:type{parameters}% or %name:type:extra% of version 2 rulebases
+    private static final Pattern FIELD = Pattern.compile("%([^%:{}\"]+):([a-zA-Z0-9-]+)[^%]*%");
+
+    private final Map<String, ColumnType> columns;
+
+    public ColumnSchema(final Map<String, ColumnType> columns) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("ColumnSchema must have at least one column");
+        }
+        this.columns = Collections.unmodifiableMap(new LinkedHashMap<>(columns));
+    }
+
+    /**
+     * Derive a schema from the fields of a version 2 rulebase. Fields extracted with the number parser become LONG
+     * columns and fields extracted with the float parser DOUBLE columns. Other fields, and fields whose parser differs
+     * between rules, become STRING columns. Discarded fields named "-" and fields written in json syntax are skipped.
+     *
+     * @param rulebase The string with the actual rulebase.
+     * @return ColumnSchema holding the fields in the order they first appear in the rulebase.
+     */
+    public static ColumnSchema of(final String rulebase) {
+        final Map<String, ColumnType> columns = new LinkedHashMap<>();
+        for (String line : rulebase.split("\n")) {
+            if (!line.startsWith("rule=")) {
+                continue;
+            }
+            final Matcher matcher = FIELD.matcher(line);
+            while (matcher.find()) {
+                final String name = matcher.group(1);
+                if ("-".equals(name)) {
+                    continue;
+                }
+                final ColumnType type;
+                if ("number".equals(matcher.group(2))) {
+                    type = ColumnType.LONG;
+                }
+                else if ("float".equals(matcher.group(2))) {
+                    type = ColumnType.DOUBLE;
+                }
+                else {
+                    type = ColumnType.STRING;
+                }
+                final ColumnType previous = columns.putIfAbsent(name, type);
+                if (previous != null && previous != type) {
+                    columns.put(name, ColumnType.STRING);
+                }
+            }
+        }
+        return new ColumnSchema(columns);
+    }
+
+    /**
+     * @return column names and types in column order.
+     */
+    public Map<String, ColumnType> columns() {
+        return columns;
+    }
+}
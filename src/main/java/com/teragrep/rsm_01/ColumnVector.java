@@ -0,0 +1,173 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Values of a single field for every message of a columnar batch, laid out like an Apache Arrow vector. Validity of the
+ * rows is kept in a bitmap where the least significant bit of the first byte is the first row, and a set bit marks a
+ * non-null row. Number columns hold their values in a primitive array. String columns hold the UTF-8 bytes of all rows
+ * one after another, with the value of row i between offsets[i] and offsets[i + 1]. Null rows hold 0 or an empty
+ * string.
+ */
+public final class ColumnVector {
+
+    private static final int BYTE_SHIFT = 3;
+    private static final int BIT_MASK = 7;
+
+    private final String name;
+    private final ColumnType type;
+    private final int rowCount;
+    private final byte[] validity;
+    private final long[] longs;
+    private final double[] doubles;
+    private final int[] offsets;
+    private final byte[] data;
+
+    ColumnVector(
+            final String name,
+            final ColumnType type,
+            final int rowCount,
+            final byte[] validity,
+            final long[] longs,
+            final double[] doubles,
+            final int[] offsets,
+            final byte[] data
+    ) {
+        this.name = name;
+        this.type = type;
+        this.rowCount = rowCount;
+        this.validity = validity;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public ColumnType type() {
+        return type;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param row Row index.
+     * @return true if the message of the row failed normalization, or did not have a value of the column type.
+     */
+    public boolean isNull(final int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for " + rowCount + " rows");
+        }
+        return (validity[row >>> BYTE_SHIFT] & (1 << (row & BIT_MASK))) == 0;
+    }
+
+    public long getLong(final int row) {
+        checkType(ColumnType.LONG);
+        return longs[row];
+    }
+
+    public double getDouble(final int row) {
+        checkType(ColumnType.DOUBLE);
+        return doubles[row];
+    }
+
+    public String getString(final int row) {
+        checkType(ColumnType.STRING);
+        return new String(data, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return validity bitmap of the rows.
+     */
+    public byte[] validity() {
+        return validity;
+    }
+
+    /**
+     * @return values of a LONG column.
+     */
+    public long[] longs() {
+        checkType(ColumnType.LONG);
+        return longs;
+    }
+
+    /**
+     * @return values of a DOUBLE column.
+     */
+    public double[] doubles() {
+        checkType(ColumnType.DOUBLE);
+        return doubles;
+    }
+
+    /**
+     * @return rowCount + 1 offsets into data() of a STRING column, starting from 0.
+     */
+    public int[] offsets() {
+        checkType(ColumnType.STRING);
+        return offsets;
+    }
+
+    /**
+     * @return UTF-8 bytes of the values of a STRING column.
+     */
+    public byte[] data() {
+        checkType(ColumnType.STRING);
+        return data;
+    }
+
+    private void checkType(final ColumnType expected) {
+        if (type != expected) {
+            throw new IllegalStateException("Column <" + name + "> is of type " + type + ", not " + expected);
+        }
+    }
+}
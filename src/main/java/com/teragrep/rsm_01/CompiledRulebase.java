@@ -0,0 +1,187 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Pointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rulebase that has been loaded into a liblognorm context once, and which produces additional contexts that share the
+ * loaded parse tree instead of loading the rulebase again. The shared context is discarded when the CompiledRulebase
+ * and every JavaLognormImpl produced by it have been closed, so the produced objects stay usable after the
+ * CompiledRulebase is closed.
+ */
+public final class CompiledRulebase implements LognormSource, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledRulebase.class);
+
+    private final Pointer ctx;
+    private final LognormBinding binding;
+    private final LognormMetrics metrics;
+    private final NativeResource resource;
+    private final LiteralPrefilter prefilter;
+    private final SlowMessageProfiler profiler;
+    private final NormalizationGuard guard;
+    private final AtomicInteger openContexts;
+    private boolean closed;
+
+    public CompiledRulebase(final Pointer ctx) {
+        this(ctx, new ProxyLognormBinding());
+    }
+
+    public CompiledRulebase(final Pointer ctx, final LognormBinding binding) {
+        this(ctx, binding, LognormMetrics.disabled());
+    }
+
+    public CompiledRulebase(final Pointer ctx, final LognormBinding binding, final LognormMetrics metrics) {
+        this(
+                ctx,
+                binding,
+                metrics,
+                NativeMemoryTracker.CONTEXT_BYTES,
+                LiteralPrefilter.acceptAll(),
+                SlowMessageProfiler.disabled(),
+                NormalizationGuard.unbounded()
+        );
+    }
+
+    CompiledRulebase(
+            final Pointer ctx,
+            final LognormBinding binding,
+            final LognormMetrics metrics,
+            final long estimatedBytes,
+            final LiteralPrefilter prefilter,
+            final SlowMessageProfiler profiler,
+            final NormalizationGuard guard
+    ) {
+        this.ctx = ctx;
+        this.binding = binding;
+        this.metrics = metrics;
+        this.resource = new RulebaseResource(this, ctx, estimatedBytes);
+        this.prefilter = prefilter;
+        this.profiler = profiler;
+        this.guard = guard;
+        this.openContexts = new AtomicInteger();
+        this.closed = false;
+    }
+
+    /**
+     * Create a JavaLognormImpl that shares the loaded rulebase of this CompiledRulebase. Creation does not load the
+     * rulebase again.
+     *
+     * @return JavaLognormImpl using the shared rulebase.
+     */
+    @Override
+    public synchronized JavaLognormImpl lognorm() {
+        if (closed) {
+            throw new IllegalStateException("CompiledRulebase is closed");
+        }
+        final Pointer sharedCtx = LibJavaLognorm.jnaInstance.shareCtx(ctx);
+        if (sharedCtx == Pointer.NULL) {
+            throw new NullPointerException("shareCtx() returned a null pointer, failed to share the context.");
+        }
+        return new JavaLognormImpl(
+                sharedCtx,
+                binding,
+                metrics,
+                NativeMemoryTracker.CONTEXT_BYTES,
+                prefilter,
+                profiler,
+                guard,
+                openContexts
+        );
+    }
+
+    /**
+     * Contexts created with lognorm() keep the shared rulebase loaded in C after this CompiledRulebase is closed, until
+     * they are closed too.
+     *
+     * @return amount of contexts created with lognorm() that have not been closed.
+     */
+    int openContexts() {
+        return openContexts.get();
+    }
+
+    /**
+     * Releases the reference of this CompiledRulebase to the shared context.
+     *
+     * @throws IllegalArgumentException Throws if closing fails.
+     */
+    @Override
+    public synchronized void close() throws IllegalArgumentException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        final int i = resource.release();
+        if (i != 0) {
+            LOGGER.error("ln_exitCtx() returned error code <{}>", i);
+            throw new IllegalArgumentException("ln_exitCtx() returned " + i + " instead of 0");
+        }
+    }
+
+    /**
+     * Reference of a CompiledRulebase to the shared context, released when the CompiledRulebase is closed or becomes
+     * unreachable.
+     */
+    private static final class RulebaseResource extends NativeResource {
+
+        private final Pointer ctx;
+
+        private RulebaseResource(final Object owner, final Pointer ctx, final long bytes) {
+            super(owner, true, bytes);
+            this.ctx = ctx;
+        }
+
+        @Override
+        protected int free() {
+            return LibJavaLognorm.jnaInstance.exitCtx(ctx);
+        }
+    }
+}
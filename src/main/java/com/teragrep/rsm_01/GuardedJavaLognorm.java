@@ -0,0 +1,396 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe JavaLognorm that runs its contexts on worker threads and bounds the time a call waits for normalization
+ * by the deadline of a NormalizationGuard. A native call can't be interrupted, so a worker whose call exceeds the
+ * deadline is quarantined: the caller gets a timeout failure immediately, a new worker with a new context is built in
+ * the background to take the place of the quarantined one, and the quarantined context is closed when its call
+ * eventually returns. The deadline also covers waiting for an idle worker, so a pathological message costs its caller
+ * at most the deadline, and does not stall the following messages for longer than that.
+ */
+public final class GuardedJavaLognorm implements JavaLognorm, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GuardedJavaLognorm.class);
+
+    private final LognormSource lognormSource;
+    private final NormalizationGuard guard;
+    private final LinkedBlockingDeque<Worker> idle;
+    private final AtomicBoolean closed;
+    private final NormalizerThreadFactory threadFactory;
+    private final ExecutorService replacer;
+    private final AtomicInteger quarantined;
+
+    /**
+     * @param lognormFactory Factory of the contexts, whose guard gives the deadline.
+     * @param workers        Amount of worker threads, each with a context of its own.
+     * @see LognormFactory#withGuard(NormalizationGuard)
+     */
+    public GuardedJavaLognorm(final LognormFactory lognormFactory, final int workers) {
+        this(lognormFactory, lognormFactory.guard(), workers);
+    }
+
+    /**
+     * @param lognormSource Source of the contexts, such as a CompiledRulebase.
+     * @param guard         Guard that gives the deadline and counts the timed out calls.
+     * @param workers       Amount of worker threads, each with a context of its own.
+     */
+    public GuardedJavaLognorm(final LognormSource lognormSource, final NormalizationGuard guard, final int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Amount of workers must be at least 1, got " + workers);
+        }
+        if (guard.deadlineMillis() == 0) {
+            throw new IllegalArgumentException("GuardedJavaLognorm requires a NormalizationGuard with a deadline");
+        }
+        this.lognormSource = lognormSource;
+        this.guard = guard;
+        this.idle = new LinkedBlockingDeque<>();
+        this.closed = new AtomicBoolean(false);
+        this.threadFactory = new NormalizerThreadFactory("rsm_01-guarded");
+        this.replacer = Executors.newSingleThreadExecutor(new NormalizerThreadFactory("rsm_01-guarded-replacer"));
+        this.quarantined = new AtomicInteger();
+        for (int i = 0; i < workers; i++) {
+            idle.offer(new Worker());
+        }
+    }
+
+    /**
+     * Normalize a message on a worker thread.
+     *
+     * @param text The message string to normalize
+     * @return normalized message as a JSON string object
+     * @throws IllegalArgumentException if normalization fails or exceeds the deadline
+     */
+    @Override
+    public String normalize(final String text) {
+        return call(javaLognormImpl -> javaLognormImpl.normalize(text), 1, () -> {
+            throw new IllegalArgumentException(
+                    "Normalization exceeded the deadline of " + guard.deadlineMillis() + " ms"
+            );
+        });
+    }
+
+    /**
+     * Normalize a message on a worker thread without throwing when the message fails normalization or exceeds the
+     * deadline.
+     *
+     * @param text The message string to normalize
+     * @return NormalizationResult holding the normalized message, or NormalizationGuard.TIMED_OUT if the deadline was
+     *         exceeded
+     * @see JavaLognormImpl#tryNormalize(String)
+     */
+    public NormalizationResult tryNormalize(final String text) {
+        return call(
+                javaLognormImpl -> javaLognormImpl.tryNormalize(text), 1, () -> new NormalizationResult(NormalizationGuard.TIMED_OUT, guard.timedOutResult(), "", -1)
+        );
+    }
+
+    @Override
+    public List<String> normalizeBatch(final List<String> texts) {
+        return call(javaLognormImpl -> javaLognormImpl.normalizeBatch(texts), texts.size(), () -> {
+            throw new IllegalArgumentException(
+                    "Normalization of a batch exceeded the deadline of " + guard.deadlineMillis() + " ms"
+            );
+        });
+    }
+
+    /**
+     * Normalize a batch of messages on a worker thread. The deadline applies to the whole batch, and if it is exceeded
+     * every message gets the return code NormalizationGuard.TIMED_OUT.
+     *
+     * @param texts The message strings to normalize
+     * @param out   Array that receives the normalized message, or the error information for failed messages
+     * @return return code of each message, 0 for success
+     */
+    @Override
+    public int[] normalizeBatch(final String[] texts, final String[] out) {
+        // Results are written to a copy, so that a call that overruns the deadline does not write to out later
+        final String[] results = new String[out.length];
+        final AtomicBoolean overran = new AtomicBoolean(false);
+        final int[] rvs = call(javaLognormImpl -> javaLognormImpl.normalizeBatch(texts, results), texts.length, () -> {
+            overran.set(true);
+            final int[] timedOut = new int[texts.length];
+            Arrays.fill(timedOut, NormalizationGuard.TIMED_OUT);
+            return timedOut;
+        });
+        if (overran.get()) {
+            Arrays.fill(out, 0, texts.length, guard.timedOutResult());
+        }
+        else {
+            System.arraycopy(results, 0, out, 0, texts.length);
+        }
+        return rvs;
+    }
+
+    /**
+     * @return amount of quarantined contexts whose call has not returned yet.
+     */
+    public int quarantinedContexts() {
+        return quarantined.get();
+    }
+
+    /**
+     * Runs the task on an idle worker and waits for it until the deadline, which starts when the call waits for the
+     * worker. A worker is quarantined only if its task started and was still running at the deadline, a task that was
+     * still waiting for the worker is skipped instead.
+     *
+     * @param task      Normalization to run with the context of the worker.
+     * @param messages  Amount of messages the task normalizes, counted as timed out if the deadline is exceeded.
+     * @param onTimeout Result, or failure, of a call that exceeds the deadline.
+     * @return result of the task.
+     */
+    private <T> T call(final Function<JavaLognormImpl, T> task, final int messages, final Supplier<T> onTimeout) {
+        final long deadline = System.nanoTime() + guard.deadlineNanos();
+        final Worker worker = borrow(deadline);
+        final T result;
+        if (worker == null) {
+            guard.timeout(messages);
+            LOGGER.warn("No liblognorm context became idle within the deadline of <{}> ms", guard.deadlineMillis());
+            result = onTimeout.get();
+        }
+        else {
+            result = call(worker, deadline, task, messages, onTimeout);
+        }
+        return result;
+    }
+
+    private <T> T call(
+            final Worker worker,
+            final long deadline,
+            final Function<JavaLognormImpl, T> task,
+            final int messages,
+            final Supplier<T> onTimeout
+    ) {
+        // The worker claims the task when it starts it, the caller claims it at the deadline to skip it if not started
+        final AtomicBoolean claimed = new AtomicBoolean(false);
+        final Future<T> future = worker.submit(javaLognormImpl -> {
+            T result = null;
+            if (claimed.compareAndSet(false, true)) {
+                result = task.apply(javaLognormImpl);
+            }
+            return result;
+        });
+        boolean quarantine = false;
+        T result;
+        try {
+            result = future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            guard.timeout(messages);
+            if (claimed.compareAndSet(false, true) || future.isDone()) {
+                LOGGER.warn("Normalization did not finish within the deadline of <{}> ms", guard.deadlineMillis());
+            }
+            else {
+                quarantine = true;
+                LOGGER
+                        .warn(
+                                "Normalization exceeded the deadline of <{}> ms, quarantining its context",
+                                guard.deadlineMillis()
+                        );
+                worker.quarantine();
+                replace();
+            }
+            result = onTimeout.get();
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // The call still runs on the worker, the next call waits for it in the worker's queue
+            throw new IllegalStateException("Interrupted while waiting for normalization", e);
+        }
+        finally {
+            if (!quarantine) {
+                release(worker);
+            }
+        }
+        return result;
+    }
+
+    private static RuntimeException rethrow(final Throwable cause) {
+        final RuntimeException exception;
+        if (cause instanceof RuntimeException) {
+            exception = (RuntimeException) cause;
+        }
+        else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        else {
+            exception = new IllegalStateException("Normalization failed", cause);
+        }
+        return exception;
+    }
+
+    /**
+     * @param deadline System.nanoTime() of the deadline of the call.
+     * @return idle worker, or null if none became idle with time left before the deadline.
+     */
+    private Worker borrow(final long deadline) {
+        if (closed.get()) {
+            throw new IllegalStateException("GuardedJavaLognorm is closed");
+        }
+        Worker worker;
+        try {
+            worker = idle.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a liblognorm context", e);
+        }
+        if (worker != null && deadline - System.nanoTime() <= 0) {
+            // Submitting without time left would only quarantine a healthy worker
+            release(worker);
+            worker = null;
+        }
+        return worker;
+    }
+
+    private void release(final Worker worker) {
+        if (closed.get()) {
+            worker.close();
+        }
+        else {
+            idle.offerFirst(worker);
+            // close() may have drained the workers between the check and the offer.
+            if (closed.get()) {
+                closeIdle();
+            }
+        }
+    }
+
+    /**
+     * Builds a new worker in place of a quarantined one on the replacer thread, so that the caller does not wait for
+     * the new context.
+     */
+    private void replace() {
+        if (!closed.get()) {
+            try {
+                replacer.execute(() -> {
+                    if (!closed.get()) {
+                        release(new Worker());
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                // close() shut the replacer down after the check, no replacement is needed anymore
+                LOGGER.debug("Not replacing the quarantined context of a closed GuardedJavaLognorm");
+            }
+        }
+    }
+
+    private void closeIdle() {
+        Worker worker = idle.pollFirst();
+        while (worker != null) {
+            worker.close();
+            worker = idle.pollFirst();
+        }
+    }
+
+    /**
+     * Closes the idle workers and their contexts. Workers that are in use are closed when their call returns.
+     */
+    @Override
+    public void close() {
+        closed.set(true);
+        replacer.shutdown();
+        closeIdle();
+    }
+
+    /**
+     * Worker thread with a context of its own. Calls are run one at a time in the order they were submitted.
+     */
+    private final class Worker {
+
+        private final JavaLognormImpl javaLognormImpl;
+        private final ExecutorService executorService;
+
+        private Worker() {
+            this.javaLognormImpl = lognormSource.lognorm();
+            this.executorService = Executors.newSingleThreadExecutor(threadFactory);
+        }
+
+        private <T> Future<T> submit(final Function<JavaLognormImpl, T> task) {
+            return executorService.submit(() -> task.apply(javaLognormImpl));
+        }
+
+        /**
+         * Closes the context once the overrunning call returns, and lets the thread exit.
+         */
+        private void quarantine() {
+            quarantined.incrementAndGet();
+            executorService.execute(() -> {
+                quarantined.decrementAndGet();
+                javaLognormImpl.close();
+            });
+            executorService.shutdown();
+        }
+
+        private void close() {
+            executorService.execute(javaLognormImpl::close);
+            executorService.shutdown();
+        }
+    }
+}
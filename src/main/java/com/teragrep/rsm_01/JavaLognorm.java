@@ -45,6 +45,8 @@
  */
 package com.teragrep.rsm_01;
 
+import java.util.List;
+
 public interface JavaLognorm {
 
     /**
@@ -55,6 +57,24 @@ public interface JavaLognorm {
      */
     public abstract String normalize(String text);
 
+    /**
+     * Normalize a batch of messages.
+     *
+     * @param texts The message strings to normalize
+     * @return normalized messages as JSON string objects, in the same order as the input
+     */
+    public abstract List<String> normalizeBatch(List<String> texts);
+
+    /**
+     * Normalize a batch of messages without throwing on messages that fail normalization.
+     *
+     * @param texts The message strings to normalize
+     * @param out   Array that receives the normalized message, or the error information for failed messages, at the
+     *              same index as the input
+     * @return liblognorm return code of each message, 0 for success
+     */
+    public abstract int[] normalizeBatch(String[] texts, String[] out);
+
     public static final class LibraryInformation {
 
         /**
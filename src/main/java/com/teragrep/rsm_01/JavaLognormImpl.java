@@ -45,18 +45,120 @@
  */
 package com.teragrep.rsm_01;
 
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JavaLognormImpl.class);
+    private static final int INITIAL_RESULT_SIZE = 4096;
+    private static final int BYTE_SHIFT = 3;
+    private static final int BIT_MASK = 7;
+    private static final String[] UNPARSED_PATH = new String[] {
+            "unparsed-data"
+    };
+    private static final String[] RULE_PATH = new String[] {
+            "metadata", "rule", "mockup"
+    };
+    private static final String[] RULE_FILE_PATH = new String[] {
+            "metadata", "rule", "location", "file"
+    };
+    private static final String[] RULE_LINE_PATH = new String[] {
+            "metadata", "rule", "location", "line"
+    };
 
     private final Pointer ctx;
+    private final LognormBinding binding;
+    private final Memory returnCode;
+    private final Memory outLength;
+    private final Memory errorRef;
+    private final LongAdder failures;
+    private final LognormMetrics metrics;
+    private final NativeResource resource;
+    private final LiteralPrefilter prefilter;
+    private final SlowMessageProfiler profiler;
+    private final NormalizationGuard guard;
+    private Memory resultBuffer;
+    private NormalizeBuffers buffers;
+    // Written after every native call that uses the context, see reachabilityFence().
+    private volatile int fence;
+
+    public JavaLognormImpl(final Pointer ctx) {
+        this(ctx, new ProxyLognormBinding());
+    }
+
+    public JavaLognormImpl(final Pointer ctx, final LognormBinding binding) {
+        this(ctx, binding, LognormMetrics.disabled());
+    }
+
+    public JavaLognormImpl(final Pointer ctx, final LognormBinding binding, final LognormMetrics metrics) {
+        this(
+                ctx,
+                binding,
+                metrics,
+                NativeMemoryTracker.CONTEXT_BYTES,
+                LiteralPrefilter.acceptAll(),
+                SlowMessageProfiler.disabled(),
+                NormalizationGuard.unbounded()
+        );
+    }
 
-    public JavaLognormImpl(Pointer ctx) {
+    JavaLognormImpl(
+            final Pointer ctx,
+            final LognormBinding binding,
+            final LognormMetrics metrics,
+            final long estimatedBytes,
+            final LiteralPrefilter prefilter,
+            final SlowMessageProfiler profiler,
+            final NormalizationGuard guard
+    ) {
+        this(ctx, binding, metrics, estimatedBytes, prefilter, profiler, guard, new AtomicInteger());
+    }
+
+    /**
+     * @param openContexts Counter of the open contexts sharing a rulebase, incremented now and decremented when the
+     *                     context is discarded.
+     */
+    JavaLognormImpl(
+            final Pointer ctx,
+            final LognormBinding binding,
+            final LognormMetrics metrics,
+            final long estimatedBytes,
+            final LiteralPrefilter prefilter,
+            final SlowMessageProfiler profiler,
+            final NormalizationGuard guard,
+            final AtomicInteger openContexts
+    ) {
         this.ctx = ctx;
+        this.binding = binding;
+        this.returnCode = new Memory(Integer.BYTES);
+        this.outLength = new Memory(Integer.BYTES);
+        this.errorRef = new Memory(Native.POINTER_SIZE);
+        this.failures = new LongAdder();
+        this.metrics = metrics;
+        this.resource = ctx == Pointer.NULL ? null : new ContextResource(
+                this,
+                ctx,
+                estimatedBytes,
+                metrics,
+                openContexts
+        );
+        this.prefilter = prefilter;
+        this.profiler = profiler;
+        this.guard = guard;
+        this.resultBuffer = new Memory(INITIAL_RESULT_SIZE);
     }
 
     /**
@@ -67,7 +169,7 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
             throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
         }
 
-        int i = LibJavaLognorm.jnaInstance.exitCtx(ctx);
+        final int i = resource.release();
         if (i != 0) {
             LOGGER.error("ln_exitCtx() returned error code <{}>", i);
             throw new IllegalArgumentException("ln_exitCtx() returned " + i + " instead of 0");
@@ -75,26 +177,576 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
     }
 
     @Override
-    public String normalize(String text) {
+    public String normalize(final String text) {
         if (ctx != Pointer.NULL) {
-            LibJavaLognorm.NormalizedStruct norm = new LibJavaLognorm.NormalizedStruct();
-            LibJavaLognorm.NormalizedStruct result = LibJavaLognorm.jnaInstance.normalize(ctx, text, norm);
-            if (result.rv != 0) {
+            final String message = limit(text);
+            final int rejected = prefilter.reject(message);
+            if (rejected >= 0) {
+                throw prefilterFailure(message, rejected);
+            }
+            final long start = metrics.start();
+            final long profileStart = profiler.start();
+            final Pointer jref = binding.normalize(ctx, message, returnCode);
+            reachabilityFence();
+            final int i = returnCode.getInt(0);
+            metrics.normalized(start, i == 0);
+            profile(profileStart, message, i, jref);
+            if (i != 0) {
                 // error occurred
+                failures.increment();
                 LOGGER
                         .error(
                                 "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
-                                result.rv, liblognormReadResult(result.jref)
+                                i, liblognormReadResult(jref)
+                        );
+                throw new IllegalArgumentException("ln_normalize() failed to perform extraction with error code: " + i);
+            }
+            recordRuleHit(jref);
+            return liblognormReadResult(jref);
+        }
+        else {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+    }
+
+    /**
+     * Normalize a message without throwing or logging when the message fails normalization. Intended for pipelines
+     * where unmatched messages are expected, so that they can be routed elsewhere without the cost of an exception and
+     * a log entry per message. Failures are still counted, see failures().
+     *
+     * @param text The message string to normalize
+     * @return NormalizationResult holding the normalized message, or the return code and unparsed data on failure
+     */
+    public NormalizationResult tryNormalize(final String text) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        final String message = guard.limit(text);
+        final NormalizationResult result;
+        if (message == null) {
+            failures.increment();
+            metrics.messages(1, 1);
+            result = new NormalizationResult(NormalizationGuard.TOO_LONG, guard.rejectedResult(text.length()), "", -1);
+        }
+        else {
+            final int rejected = prefilter.reject(message);
+            if (rejected >= 0) {
+                failures.increment();
+                metrics.messages(1, 1);
+                result = new NormalizationResult(
+                        LiteralPrefilter.NO_MATCH,
+                        LiteralPrefilter.errorResult(message, rejected),
+                        message.substring(rejected),
+                        rejected
+                );
+            }
+            else {
+                result = liblognormTryNormalize(message);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes a message that passed the guard and the prefilter with liblognorm.
+     *
+     * @param message The message string to normalize
+     * @return NormalizationResult holding the normalized message, or the return code and unparsed data on failure
+     */
+    private NormalizationResult liblognormTryNormalize(final String message) {
+        final long start = metrics.start();
+        final long profileStart = profiler.start();
+        final Pointer jref = binding.normalize(ctx, message, returnCode);
+        reachabilityFence();
+        final int i = returnCode.getInt(0);
+        metrics.normalized(start, i == 0);
+        profile(profileStart, message, i, jref);
+        final NormalizationResult result;
+        if (i == 0) {
+            recordRuleHit(jref);
+            result = new NormalizationResult(liblognormReadResult(jref));
+        }
+        else {
+            failures.increment();
+            String unparsedData = "";
+            int unparsedPosition = -1;
+            final Pointer unparsed = LibJavaLognorm.jnaInstance.recordField(jref, UNPARSED_PATH, UNPARSED_PATH.length);
+            if (unparsed != null) {
+                unparsedData = LibJavaLognorm.jnaInstance.recordString(unparsed);
+                // liblognorm reports the unparsed tail of the message, so the position is where that tail starts
+                unparsedPosition = Math.max(0, message.length() - unparsedData.length());
+            }
+            result = new NormalizationResult(i, liblognormReadResult(jref), unparsedData, unparsedPosition);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the amount of messages that failed normalization with this context, including batch messages and messages
+     * normalized with tryNormalize().
+     *
+     * @return amount of failed messages
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * Normalize a message into a NormalizedRecord that reads the normalized fields directly from C without serializing
+     * the whole result to a json string. The returned record must be closed when it is not needed anymore.
+     *
+     * @param text The message string to normalize
+     * @return normalized message as a NormalizedRecord
+     */
+    public NormalizedRecord normalizeRecord(final String text) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        final String message = limit(text);
+        final int rejected = prefilter.reject(message);
+        if (rejected >= 0) {
+            throw prefilterFailure(message, rejected);
+        }
+        final long start = metrics.start();
+        final long profileStart = profiler.start();
+        final Pointer jref = binding.normalize(ctx, message, returnCode);
+        reachabilityFence();
+        final int i = returnCode.getInt(0);
+        metrics.normalized(start, i == 0);
+        profile(profileStart, message, i, jref);
+        if (i != 0) {
+            // error occurred
+            failures.increment();
+            LOGGER
+                    .error(
+                            "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
+                            i, liblognormReadResult(jref)
+                    );
+            throw new IllegalArgumentException("ln_normalize() failed to perform extraction with error code: " + i);
+        }
+        recordRuleHit(jref);
+        return new NormalizedRecord(jref, NativeMemoryTracker.resultBytes(message));
+    }
+
+    /**
+     * Normalize a message into bytes serialized in the result format of the LognormFactory, UTF-8 encoded JSON by
+     * default or MessagePack that can be decoded with MessagePackReader. The result is serialized in C directly into a
+     * buffer owned by this object, which grows when a result does not fit. The message is normalized only once also
+     * when the buffer grows.
+     *
+     * @param text The message string to normalize
+     * @return normalized message serialized in the result format
+     * @see LognormFactory#withResultFormat(ResultFormat)
+     */
+    public byte[] normalizeBytes(final String text) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        final String message = limit(text);
+        final int rejected = prefilter.reject(message);
+        if (rejected >= 0) {
+            throw prefilterFailure(message, rejected);
+        }
+        final long start = metrics.start();
+        final long profileStart = profiler.start();
+        final Pointer jref = binding.normalize(ctx, message, returnCode);
+        reachabilityFence();
+        final int rv = returnCode.getInt(0);
+        metrics.normalized(start, rv == 0);
+        profile(profileStart, message, rv, jref);
+        if (rv != 0) {
+            // error occurred
+            failures.increment();
+            LOGGER
+                    .error(
+                            "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
+                            rv, liblognormReadResult(jref)
+                    );
+            throw new IllegalArgumentException("ln_normalize() failed to perform extraction with error code: " + rv);
+        }
+        recordRuleHit(jref);
+        try {
+            int length = LibJavaLognorm.jnaInstance.serializeResult(ctx, jref, resultBuffer, (int) resultBuffer.size());
+            reachabilityFence();
+            if (length > resultBuffer.size()) {
+                // Result did not fit, serialize it again into a buffer of the required size
+                resultBuffer = new Memory(length);
+                length = LibJavaLognorm.jnaInstance.serializeResult(ctx, jref, resultBuffer, length);
+                reachabilityFence();
+            }
+            return resultBuffer.getByteArray(0, length);
+        }
+        finally {
+            liblognormDestroyResult(jref);
+        }
+    }
+
+    /**
+     * Normalize a UTF-8 encoded message from a direct ByteBuffer and write the result, serialized in the result format
+     * of the LognormFactory, into another direct ByteBuffer. The message is read in place from the remaining bytes of
+     * the input buffer and the result is written by C directly at the position of the output buffer, so no intermediate
+     * Strings are created.
+     * <p>
+     * On success the position of the input buffer is moved to its limit and the position of the output buffer is
+     * advanced by the length of the result. If the result does not fit into the remaining bytes of the output buffer,
+     * neither buffer is modified and the required capacity is returned as a negative number, after which the call can
+     * be repeated with a larger output buffer.
+     *
+     * @param in  Direct ByteBuffer holding the message to normalize between its position and limit
+     * @param out Direct ByteBuffer that receives the normalized message, as a JSON string by default
+     * @return Amount of bytes written to the output buffer, or the negated required capacity if it was too small
+     */
+    public int normalize(final ByteBuffer in, final ByteBuffer out) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        if (!in.isDirect() || !out.isDirect()) {
+            throw new IllegalArgumentException("normalize() requires direct ByteBuffers");
+        }
+        final int inLength = guard.allowedLength(in);
+        if (inLength < 0) {
+            throw tooLongFailure(in.remaining());
+        }
+        final Pointer inPointer = Native.getDirectBufferPointer(in).share(in.position());
+        final Pointer outPointer = Native.getDirectBufferPointer(out).share(out.position());
+        final long start = metrics.start();
+        final int rv = LibJavaLognorm.jnaInstance
+                .normalizeSlice(ctx, inPointer, inLength, outPointer, out.remaining(), outLength, errorRef);
+        reachabilityFence();
+        metrics.normalized(start, rv == 0);
+        if (rv != 0) {
+            // error occurred
+            failures.increment();
+            final Pointer jref = errorRef.getPointer(0);
+            // No result when the message could not be copied for normalization
+            final String errorInformation = jref == null ? "" : liblognormReadResult(jref);
+            LOGGER
+                    .error(
+                            "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
+                            rv, errorInformation
+                    );
+            throw new IllegalArgumentException(
+                    "ln_normalize() failed to perform extraction with error code: " + rv
+                            + ". Generated error information: " + errorInformation
+            );
+        }
+        final int length = outLength.getInt(0);
+        final int written;
+        if (length > out.remaining()) {
+            written = -length;
+        }
+        else {
+            in.position(in.limit());
+            out.position(out.position() + length);
+            written = length;
+        }
+        return written;
+    }
+
+    /**
+     * Normalize a message reusing native input and output buffers owned by this context, without allocating on the Java
+     * heap once the buffers have grown to fit the messages. The message is encoded to UTF-8 directly into native
+     * memory, and the result is serialized by C, in the result format of the LognormFactory, into native memory that is
+     * read with reusableResult(). Failures are neither thrown nor logged, the return code tells whether the result
+     * holds the normalized message or error information. Messages rejected by the NormalizationGuard of the
+     * LognormFactory return NormalizationGuard.TOO_LONG with an empty result. Like the ByteBuffer variant of
+     * normalize(), messages are not prefiltered.
+     *
+     * @param text The message to normalize, for example a reused StringBuilder
+     * @return liblognorm return code, 0 for success
+     */
+    public int normalizeReusable(final CharSequence text) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        if (buffers == null) {
+            buffers = new NormalizeBuffers();
+        }
+        final int length = guard.allowedLength(text.length());
+        final int rv;
+        if (length < 0) {
+            failures.increment();
+            metrics.messages(1, 1);
+            buffers.clear();
+            rv = NormalizationGuard.TOO_LONG;
+        }
+        else {
+            final long start = metrics.start();
+            rv = buffers.normalize(ctx, text, length);
+            reachabilityFence();
+            metrics.normalized(start, rv == 0);
+            if (rv != 0) {
+                failures.increment();
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Result of the last normalizeReusable() call as a direct ByteBuffer over native memory owned by this context,
+     * holding the result between position 0 and the limit. The buffer is overwritten by the next call and must not be
+     * used after the context is closed.
+     *
+     * @return the last result serialized in the result format of the LognormFactory
+     */
+    public ByteBuffer reusableResult() {
+        if (buffers == null) {
+            throw new IllegalStateException("normalizeReusable() has not been called");
+        }
+        return buffers.result();
+    }
+
+    @Override
+    public List<String> normalizeBatch(final List<String> texts) {
+        final String[] out = new String[texts.size()];
+        final int[] rvs = normalizeBatch(texts.toArray(new String[0]), out);
+        for (int i = 0; i < rvs.length; i++) {
+            if (rvs[i] != 0) {
+                // error occurred
+                LOGGER
+                        .error(
+                                "ln_normalize() failed to perform extraction of message at index <{}> with error code <{}>. Generated error information: <{}>",
+                                i, rvs[i], out[i]
                         );
                 throw new IllegalArgumentException(
-                        "ln_normalize() failed to perform extraction with error code: " + result.rv
+                        "ln_normalize() failed to perform extraction with error code: " + rvs[i]
+                                + " for message at index: " + i
                 );
             }
-            return liblognormReadResult(result.jref);
+        }
+        return Arrays.asList(out);
+    }
+
+    @Override
+    public int[] normalizeBatch(final String[] texts, final String[] out) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        if (out.length < texts.length) {
+            throw new IllegalArgumentException(
+                    "Output array length " + out.length + " is smaller than the amount of messages " + texts.length
+            );
+        }
+        final int[] rvs;
+        if (texts.length == 0) {
+            rvs = new int[0];
+        }
+        else if (prefilter.isFiltering() || guard.isLimiting()) {
+            rvs = filteredBatch(texts, out);
         }
         else {
+            rvs = liblognormNormalizeBatch(texts, out);
+        }
+        return rvs;
+    }
+
+    /**
+     * Normalize a batch of messages into column vectors of the top level fields named by the schema, with a single call
+     * to C. The fields are written into the columns in C, so no per-message json strings or objects are created. Every
+     * column is null for the rows of messages that failed normalization, see ColumnarBatch.returnCodes().
+     *
+     * @param texts  The message strings to normalize
+     * @param schema Fields to extract and their column types
+     * @return normalized messages as column vectors
+     */
+    public ColumnarBatch normalizeColumns(final String[] texts, final ColumnSchema schema) {
+        if (ctx == Pointer.NULL) {
             throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
         }
+        final int count = texts.length;
+        // Rejected messages are normalized as empty messages, and their rows are failed afterwards
+        String[] messages = texts;
+        final boolean[] tooLong = new boolean[guard.isLimiting() ? count : 0];
+        if (guard.isLimiting()) {
+            messages = new String[count];
+            for (int i = 0; i < count; i++) {
+                final String message = guard.limit(texts[i]);
+                tooLong[i] = message == null;
+                messages[i] = tooLong[i] ? "" : message;
+            }
+        }
+        final int columnCount = schema.columns().size();
+        final String[] names = schema.columns().keySet().toArray(new String[0]);
+        final int[] types = new int[columnCount];
+        final int[] slots = new int[columnCount];
+        final int[] typeCounts = new int[ColumnType.values().length];
+        for (int j = 0; j < columnCount; j++) {
+            final ColumnType type = schema.columns().get(names[j]);
+            types[j] = type.code();
+            slots[j] = typeCounts[type.ordinal()]++;
+        }
+        final int bitmapBytes = (count + BIT_MASK) >>> BYTE_SHIFT;
+        final Memory validity = columnMemory((long) bitmapBytes * columnCount);
+        final Memory longs = columnMemory((long) typeCounts[ColumnType.LONG.ordinal()] * count * Long.BYTES);
+        final Memory doubles = columnMemory((long) typeCounts[ColumnType.DOUBLE.ordinal()] * count * Double.BYTES);
+        final Memory offsets = columnMemory(
+                (long) typeCounts[ColumnType.STRING.ordinal()] * (count + 1) * Integer.BYTES
+        );
+        // Values are mostly parts of the messages, so the strings of one column usually fit into their total length.
+        long estimate = 0;
+        for (String text : messages) {
+            estimate += text.length();
+        }
+        Memory data = columnMemory(estimate);
+        final int[] rvs = new int[count];
+        final int[] dataLength = new int[1];
+        int failed = LibJavaLognorm.jnaInstance
+                .normalizeColumns(
+                        ctx, messages, count, names, types, slots, columnCount, rvs, validity, longs, doubles, offsets,
+                        data, (int) data.size(), dataLength
+                );
+        reachabilityFence();
+        if (failed >= 0 && dataLength[0] > data.size()) {
+            // Strings did not fit, normalize again into memory of the required size
+            data = columnMemory(dataLength[0]);
+            failed = LibJavaLognorm.jnaInstance
+                    .normalizeColumns(
+                            ctx, messages, count, names, types, slots, columnCount, rvs, validity, longs, doubles,
+                            offsets, data, (int) data.size(), dataLength
+                    );
+            reachabilityFence();
+        }
+        if (failed < 0) {
+            throw new IllegalStateException("normalizeColumns() failed to allocate memory for " + count + " messages");
+        }
+        for (int i = 0; i < tooLong.length; i++) {
+            if (tooLong[i]) {
+                failed += rvs[i] == 0 ? 1 : 0;
+                rvs[i] = NormalizationGuard.TOO_LONG;
+            }
+        }
+        failures.add(failed);
+        metrics.messages(count, failed);
+        final Map<String, ColumnVector> columns = new LinkedHashMap<>();
+        for (int j = 0; j < columnCount; j++) {
+            final ColumnType type = schema.columns().get(names[j]);
+            final byte[] columnValidity = validity.getByteArray((long) bitmapBytes * j, bitmapBytes);
+            for (int i = 0; i < tooLong.length; i++) {
+                if (tooLong[i]) {
+                    columnValidity[i >>> BYTE_SHIFT] &= (byte) ~(1 << (i & BIT_MASK));
+                }
+            }
+            long[] columnLongs = null;
+            double[] columnDoubles = null;
+            int[] columnOffsets = null;
+            byte[] columnData = null;
+            if (type == ColumnType.LONG) {
+                columnLongs = longs.getLongArray((long) slots[j] * count * Long.BYTES, count);
+            }
+            else if (type == ColumnType.DOUBLE) {
+                columnDoubles = doubles.getDoubleArray((long) slots[j] * count * Double.BYTES, count);
+            }
+            else {
+                columnOffsets = offsets.getIntArray((long) slots[j] * (count + 1) * Integer.BYTES, count + 1);
+                // Offsets point into the strings of every column, rebase them to the strings of this column
+                final int base = columnOffsets[0];
+                columnData = data.getByteArray(base, columnOffsets[count] - base);
+                for (int i = 0; i <= count; i++) {
+                    columnOffsets[i] -= base;
+                }
+            }
+            columns
+                    .put(
+                            names[j],
+                            new ColumnVector(
+                                    names[j],
+                                    type,
+                                    count,
+                                    columnValidity,
+                                    columnLongs,
+                                    columnDoubles,
+                                    columnOffsets,
+                                    columnData
+                            )
+                    );
+        }
+        return new ColumnarBatch(count, rvs, Collections.unmodifiableMap(columns));
+    }
+
+    private static Memory columnMemory(final long size) {
+        // JNA does not allocate empty memory
+        return new Memory(Math.max(1, size));
+    }
+
+    /**
+     * Normalizes the messages of a batch that pass the length limit of the guard and the prefilter, and fills in the
+     * error information of the rest.
+     *
+     * @param texts The message strings to normalize
+     * @param out   Array that receives the results
+     * @return return code of each message
+     */
+    private int[] filteredBatch(final String[] texts, final String[] out) {
+        final int[] rvs = new int[texts.length];
+        final int[] accepted = new int[texts.length];
+        final String[] acceptedTexts = new String[texts.length];
+        int count = 0;
+        for (int i = 0; i < texts.length; i++) {
+            final String message = guard.limit(texts[i]);
+            final int rejected = message == null ? 0 : prefilter.reject(message);
+            if (message == null) {
+                rvs[i] = NormalizationGuard.TOO_LONG;
+                out[i] = guard.rejectedResult(texts[i].length());
+            }
+            else if (rejected < 0) {
+                accepted[count] = i;
+                acceptedTexts[count] = message;
+                count++;
+            }
+            else {
+                rvs[i] = LiteralPrefilter.NO_MATCH;
+                out[i] = LiteralPrefilter.errorResult(message, rejected);
+            }
+        }
+        final int rejectedCount = texts.length - count;
+        failures.add(rejectedCount);
+        metrics.messages(rejectedCount, rejectedCount);
+        final int[] batchRvs;
+        if (count == texts.length) {
+            batchRvs = liblognormNormalizeBatch(acceptedTexts, out);
+        }
+        else {
+            if (count > 0) {
+                final String[] acceptedOut = new String[count];
+                final int[] acceptedRvs = liblognormNormalizeBatch(Arrays.copyOf(acceptedTexts, count), acceptedOut);
+                for (int i = 0; i < count; i++) {
+                    rvs[accepted[i]] = acceptedRvs[i];
+                    out[accepted[i]] = acceptedOut[i];
+                }
+            }
+            batchRvs = rvs;
+        }
+        return batchRvs;
+    }
+
+    /**
+     * Normalizes a non-empty batch of messages with a single call to C.
+     *
+     * @param texts The message strings to normalize
+     * @param out   Array that receives the results
+     * @return liblognorm return code of each message
+     */
+    private int[] liblognormNormalizeBatch(final String[] texts, final String[] out) {
+        final int[] rvs = new int[texts.length];
+        final Pointer[] results = new Pointer[texts.length];
+        final int failed = LibJavaLognorm.jnaInstance.normalizeBatch(ctx, texts, texts.length, rvs, results);
+        reachabilityFence();
+        failures.add(failed);
+        metrics.messages(texts.length, failed);
+        try {
+            for (int i = 0; i < texts.length; i++) {
+                if (results[i] == null) {
+                    throw new IllegalStateException(
+                            "normalizeBatch() failed to allocate the result of message at index: " + i
+                    );
+                }
+                out[i] = results[i].getString(0);
+            }
+        }
+        finally {
+            LibJavaLognorm.jnaInstance.destroyBatchResults(results, texts.length);
+        }
+        return rvs;
     }
 
     /**
@@ -103,15 +755,124 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
      * @param jref Pointer to a C-language json object.
      * @return Json string.
      */
-    private String liblognormReadResult(Pointer jref) {
+    private String liblognormReadResult(final Pointer jref) {
         if (ctx == Pointer.NULL) {
             throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
         }
 
-        String cstring = LibJavaLognorm.jnaInstance.readResult(jref);
-        String javaString = String.copyValueOf(cstring.toCharArray(), 0, cstring.length());
-        liblognormDestroyResult(jref);
-        return javaString;
+        try {
+            final String cstring = binding.readResult(jref);
+            return String.copyValueOf(cstring.toCharArray(), 0, cstring.length());
+        }
+        finally {
+            liblognormDestroyResult(jref);
+        }
+    }
+
+    /**
+     * Counts and logs a message rejected by the prefilter like a message that failed normalization in liblognorm.
+     *
+     * @param text     The rejected message.
+     * @param position Position where liblognorm would have stopped parsing the message.
+     * @return exception to throw.
+     */
+    private IllegalArgumentException prefilterFailure(final String text, final int position) {
+        failures.increment();
+        metrics.messages(1, 1);
+        LOGGER
+                .error(
+                        "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
+                        LiteralPrefilter.NO_MATCH, LiteralPrefilter.errorResult(text, position)
+                );
+        return new IllegalArgumentException(
+                "ln_normalize() failed to perform extraction with error code: " + LiteralPrefilter.NO_MATCH
+        );
+    }
+
+    /**
+     * Applies the length limit of the guard to a message of a method that throws on failure.
+     *
+     * @param text The message string to normalize
+     * @return the message, or its beginning if it was truncated
+     * @throws IllegalArgumentException if the message is rejected
+     */
+    private String limit(final String text) {
+        final String message = guard.limit(text);
+        if (message == null) {
+            throw tooLongFailure(text.length());
+        }
+        return message;
+    }
+
+    /**
+     * Counts and logs a message rejected for exceeding the maximum length of the guard.
+     *
+     * @param length Length of the rejected message.
+     * @return exception to throw.
+     */
+    private IllegalArgumentException tooLongFailure(final int length) {
+        failures.increment();
+        metrics.messages(1, 1);
+        LOGGER.error("Message of length <{}> exceeds the maximum length of <{}>", length, guard.maxLength());
+        return new IllegalArgumentException(
+                "Message of length " + length + " exceeds the maximum length of " + guard.maxLength()
+        );
+    }
+
+    /**
+     * Counts a hit for the rule that matched the message when metrics are enabled. The rule is only present in the
+     * result when the context has CTXOPT_ADD_RULE enabled.
+     *
+     * @param jref Pointer to a C-language json object holding a successful result.
+     */
+    private void recordRuleHit(final Pointer jref) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        final Pointer rule = LibJavaLognorm.jnaInstance.recordField(jref, RULE_PATH, RULE_PATH.length);
+        if (rule != null) {
+            metrics.ruleHit(LibJavaLognorm.jnaInstance.recordString(rule));
+        }
+    }
+
+    /**
+     * Captures the message into the profiler if the call was sampled and is among the slowest so far. The matched rule
+     * is read from the result, so this must be called before the result is destroyed.
+     *
+     * @param start Value returned by profiler.start() before the call.
+     * @param text  The normalized message.
+     * @param rv    liblognorm return code of the message.
+     * @param jref  Pointer to a C-language json object holding the result.
+     */
+    private void profile(final long start, final String text, final int rv, final Pointer jref) {
+        final long nanos = profiler.slowNanos(start);
+        if (nanos < 0) {
+            return;
+        }
+        String rule = "";
+        String location = "";
+        if (rv == 0) {
+            rule = recordFieldString(jref, RULE_PATH);
+            final String file = recordFieldString(jref, RULE_FILE_PATH);
+            if (!file.isEmpty()) {
+                location = file + ":" + recordFieldString(jref, RULE_LINE_PATH);
+            }
+        }
+        profiler.record(text, nanos, rv, rule, location);
+    }
+
+    private static String recordFieldString(final Pointer jref, final String[] path) {
+        final Pointer field = LibJavaLognorm.jnaInstance.recordField(jref, path, path.length);
+        return field == null ? "" : LibJavaLognorm.jnaInstance.recordString(field);
+    }
+
+    /**
+     * Keeps this object reachable until the preceding native call that uses the context has returned, so that
+     * NativeResource can't free the context in the middle of the call. Reads of final fields can be moved before the
+     * call, a volatile write can't be eliminated or moved before it.
+     */
+    private void reachabilityFence() {
+        fence = 0;
     }
 
     /**
@@ -119,8 +880,8 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
      *
      * @param jref Pointer to a C-language json object.
      */
-    private void liblognormDestroyResult(Pointer jref) {
-        LibJavaLognorm.jnaInstance.destroyResult(jref);
+    private void liblognormDestroyResult(final Pointer jref) {
+        binding.destroyResult(jref);
     }
 
     /**
@@ -130,6 +891,42 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
      */
     @Override
     public void close() throws IllegalArgumentException {
+        if (resource != null && resource.isReleased()) {
+            return;
+        }
         liblognormExitCtx();
     }
+
+    /**
+     * Context of a JavaLognormImpl, discarded when the JavaLognormImpl is closed or becomes unreachable. Counted in the
+     * live contexts of the metrics and in the open contexts until it is discarded on either path.
+     */
+    private static final class ContextResource extends NativeResource {
+
+        private final Pointer ctx;
+        private final LognormMetrics metrics;
+        private final AtomicInteger openContexts;
+
+        private ContextResource(
+                final Object owner,
+                final Pointer ctx,
+                final long bytes,
+                final LognormMetrics metrics,
+                final AtomicInteger openContexts
+        ) {
+            super(owner, true, bytes);
+            this.ctx = ctx;
+            this.metrics = metrics;
+            this.openContexts = openContexts;
+            metrics.contextOpened();
+            openContexts.incrementAndGet();
+        }
+
+        @Override
+        protected int free() {
+            metrics.contextClosed();
+            openContexts.decrementAndGet();
+            return LibJavaLognorm.jnaInstance.exitCtx(ctx);
+        }
+    }
 }
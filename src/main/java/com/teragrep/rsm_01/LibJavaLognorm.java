@@ -52,7 +52,7 @@ import org.slf4j.LoggerFactory;
 
 public interface LibJavaLognorm extends Library {
 
-    public static final LibJavaLognorm jnaInstance = Native.load("JavaLognorm", LibJavaLognorm.class);
+    public static final LibJavaLognorm jnaInstance = Native.load(NativeLibraryLoader.library(), LibJavaLognorm.class);
 
     public static interface DebugCallback extends Callback {
 
@@ -120,13 +120,23 @@ public interface LibJavaLognorm extends Library {
     public abstract Pointer initCtx();
 
     /**
-     * Discard a library context, freeing the resources associated with the given library context.
+     * Discard a library context, freeing the resources associated with the given library context. Resources shared with
+     * contexts produced by shareCtx() are freed when the last of the sharing contexts is discarded.
      *
      * @param ctx Pointer to the liblognorm context object to discard.
      * @return 0 on success, something else otherwise.
      */
     public abstract int exitCtx(Pointer ctx);
 
+    /**
+     * Produces a context that shares the loaded rulebase and options of the given liblognorm context without loading
+     * the rulebase again. exitCtx() must be called on the produced context when it is not needed anymore.
+     *
+     * @param ctx Pointer to the liblognorm context to share.
+     * @return Pointer to the sharing liblognorm context object.
+     */
+    public abstract Pointer shareCtx(Pointer ctx);
+
     /**
      * Set options on library context.
      *
@@ -135,6 +145,28 @@ public interface LibJavaLognorm extends Library {
      */
     public abstract void setCtxOpts(Pointer ctx, OptionsStruct opts);
 
+    /**
+     * Restrict successful normalization results of the context to the given fields. The fields not selected are pruned
+     * from the result before it is serialized or read. Must be called before the context is shared with shareCtx().
+     *
+     * @param ctx    Pointer to the liblognorm context.
+     * @param names  Field names of all paths one after another.
+     * @param depths Amount of field names in each path.
+     * @param count  Amount of paths.
+     * @return 0 on success, something else otherwise.
+     */
+    public abstract int setProjection(Pointer ctx, String[] names, int[] depths, int count);
+
+    /**
+     * Set the serialization of the results written by normalizeBuffer(). Must be called before the context is shared
+     * with shareCtx().
+     *
+     * @param ctx    Pointer to the liblognorm context.
+     * @param format 0 for JSON, 1 for MessagePack.
+     * @return 0 on success, something else otherwise.
+     */
+    public abstract int setResultFormat(Pointer ctx, int format);
+
     /**
      * Return true if liblognorm is build with advanced statistics activated.
      *
@@ -173,6 +205,81 @@ public interface LibJavaLognorm extends Library {
      */
     public abstract NormalizedStruct normalize(Pointer ctx, String text, NormalizedStruct norm);
 
+    /**
+     * Normalize the given message string using the given liblognorm context. Returns the C-language json object that
+     * contains either the successfully normalized message or normalization error information, and writes the
+     * success/error indicator of the liblognorm library to the given memory.
+     *
+     * @param ctx  Pointer to the liblognorm context.
+     * @param text The message string to normalize
+     * @param rv   Pointer to memory of an integer that receives 0 on success, liblognorm error code otherwise.
+     * @return Pointer to a json object.
+     */
+    public abstract Pointer normalizeRef(Pointer ctx, String text, Pointer rv);
+
+    /**
+     * Normalize the given UTF-8 encoded message in place and write the serialized result directly into the given output
+     * memory, as json or in the result format set with setResultFormat(). If the result does not fit into outCapacity
+     * bytes, outLength tells the required capacity. A json result is then not written at all, while a MessagePack
+     * result may have been written partially. The message must be followed by a NUL byte, as liblognorm reads the
+     * message of a failed normalization up to a NUL, use normalizeSlice() for messages that are not.
+     *
+     * @param ctx         Pointer to the liblognorm context.
+     * @param in          Pointer to the UTF-8 encoded message.
+     * @param inLength    Length of the message in bytes.
+     * @param out         Pointer to the memory that receives the UTF-8 encoded json result.
+     * @param outCapacity Amount of bytes available in out.
+     * @param outLength   Array that receives the length of the json result in bytes.
+     * @return 0 on success, liblognorm error code otherwise.
+     */
+    public abstract int normalizeBuffer(
+            Pointer ctx,
+            Pointer in,
+            int inLength,
+            Pointer out,
+            int outCapacity,
+            int[] outLength
+    );
+
+    /**
+     * Normalize the given UTF-8 encoded message that is not followed by a NUL byte, such as a part of a larger buffer.
+     * The message is copied into a NUL-terminated buffer owned by the context before normalizing it, otherwise same as
+     * normalizeBuffer(). The result of a failed normalization is also handed back as a json object, so that the error
+     * information can be read as json whatever the result format is.
+     *
+     * @param ctx         Pointer to the liblognorm context.
+     * @param in          Pointer to the UTF-8 encoded message.
+     * @param inLength    Length of the message in bytes.
+     * @param out         Pointer to the memory that receives the result.
+     * @param outCapacity Amount of bytes available in out.
+     * @param outLength   Pointer to memory of an integer that receives the length of the result in bytes.
+     * @param error       Pointer to memory of a pointer that receives the json object of a failed normalization, to be
+     *                    read with readResult() and destroyed with destroyResult(), or NULL.
+     * @return 0 on success, liblognorm error code otherwise.
+     */
+    public abstract int normalizeSlice(
+            Pointer ctx,
+            Pointer in,
+            int inLength,
+            Pointer out,
+            int outCapacity,
+            Pointer outLength,
+            Pointer error
+    );
+
+    /**
+     * Serialize a result returned by normalizeRef() into the given output memory, as json or in the result format set
+     * with setResultFormat(), without destroying the result. If the result does not fit into outCapacity bytes, the
+     * returned length is larger than outCapacity and the call can be repeated with larger memory.
+     *
+     * @param ctx         Pointer to the liblognorm context.
+     * @param jref        Pointer to the json object returned by normalizeRef().
+     * @param out         Pointer to the memory that receives the result.
+     * @param outCapacity Amount of bytes available in out.
+     * @return length of the serialized result in bytes.
+     */
+    public abstract int serializeResult(Pointer ctx, Pointer jref, Pointer out, int outCapacity);
+
     /**
      * Reads the results of the normalization in C.
      *
@@ -188,6 +295,133 @@ public interface LibJavaLognorm extends Library {
      */
     public abstract void destroyResult(Pointer jref);
 
+    /**
+     * Normalize a batch of message strings using the given liblognorm context with a single call to C. The
+     * normalization results are serialized to json strings in C and returned through the results array.
+     * destroyBatchResults() must be called on the results when they are not needed anymore.
+     *
+     * @param ctx     Pointer to the liblognorm context.
+     * @param texts   The message strings to normalize.
+     * @param count   Amount of messages in texts.
+     * @param rvs     Array that receives the success/error indicator of each message.
+     * @param results Array that receives a pointer to the json string of each message.
+     * @return Amount of messages that failed normalization.
+     */
+    public abstract int normalizeBatch(Pointer ctx, String[] texts, int count, int[] rvs, Pointer[] results);
+
+    /**
+     * Releases the json strings produced by normalizeBatch() from memory in C.
+     *
+     * @param results Array of pointers to json strings.
+     * @param count   Amount of json strings in results.
+     */
+    public abstract void destroyBatchResults(Pointer[] results, int count);
+
+    /**
+     * Normalize a batch of message strings and write the given top level fields into column vectors with a single call
+     * to C. Each column has a validity bitmap of (count + 7) / 8 bytes, where a set bit marks a non-null row. LONG and
+     * DOUBLE columns take count values each in longs and doubles, and STRING columns take count + 1 offsets into data,
+     * where the strings of a column are stored one after another.
+     *
+     * @param ctx          Pointer to the liblognorm context.
+     * @param texts        The message strings to normalize.
+     * @param count        Amount of messages in texts.
+     * @param columns      Names of the fields to write into columns.
+     * @param types        Type of each column: 0 string, 1 long, 2 double.
+     * @param slots        Index of each column among the columns of its type.
+     * @param columnCount  Amount of columns.
+     * @param rvs          Array that receives the success/error indicator of each message.
+     * @param validity     Memory that receives the validity bitmaps of the columns.
+     * @param longs        Memory that receives the values of the long columns.
+     * @param doubles      Memory that receives the values of the double columns.
+     * @param offsets      Memory that receives the offsets of the string columns.
+     * @param data         Memory that receives the UTF-8 bytes of the string columns.
+     * @param dataCapacity Amount of bytes available in data.
+     * @param dataLength   Array that receives the length of the strings in bytes, which is the required capacity if
+     *                     they did not fit into data.
+     * @return Amount of messages that failed normalization, -1 if memory could not be allocated.
+     */
+    public abstract int normalizeColumns(
+            Pointer ctx,
+            String[] texts,
+            int count,
+            String[] columns,
+            int[] types,
+            int[] slots,
+            int columnCount,
+            int[] rvs,
+            Pointer validity,
+            Pointer longs,
+            Pointer doubles,
+            Pointer offsets,
+            Pointer data,
+            int dataCapacity,
+            int[] dataLength
+    );
+
+    /**
+     * Looks up a field from a C-language json object by following the given path of field names.
+     *
+     * @param jref  Pointer to a C-language json object.
+     * @param path  Field names leading to the field, each name selecting a field of the previous object.
+     * @param depth Amount of field names in path.
+     * @return Pointer to the json object of the field, null if the field does not exist.
+     */
+    public abstract Pointer recordField(Pointer jref, String[] path, int depth);
+
+    /**
+     * Returns the type of a C-language json object.
+     *
+     * @param field Pointer to a C-language json object.
+     * @return json-c type of the object: 0 null, 1 boolean, 2 double, 3 int, 4 object, 5 array, 6 string.
+     */
+    public abstract int recordType(Pointer field);
+
+    /**
+     * Returns the string value of a C-language json object, or the json string of the object for other types than
+     * strings. The returned string is owned by the json object.
+     *
+     * @param field Pointer to a C-language json object.
+     * @return String value.
+     */
+    public abstract String recordString(Pointer field);
+
+    /**
+     * Reads the value of a C-language json integer, or a string holding an integer.
+     *
+     * @param field Pointer to a C-language json object.
+     * @param value Array that receives the value.
+     * @return 0 on success, -1 if the object does not hold an integer.
+     */
+    public abstract int recordLong(Pointer field, long[] value);
+
+    /**
+     * Reads the value of a C-language json number, or a string holding a number.
+     *
+     * @param field Pointer to a C-language json object.
+     * @param value Array that receives the value.
+     * @return 0 on success, -1 if the object does not hold a number.
+     */
+    public abstract int recordDouble(Pointer field, double[] value);
+
+    /**
+     * Returns the amount of fields in a C-language json object.
+     *
+     * @param field Pointer to a C-language json object.
+     * @return Amount of fields, 0 if the object is not a json object.
+     */
+    public abstract int recordFieldCount(Pointer field);
+
+    /**
+     * Reads the names of the fields in a C-language json object. The names are owned by the json object.
+     *
+     * @param field    Pointer to a C-language json object.
+     * @param names    Array that receives pointers to the field names.
+     * @param capacity Amount of names that fit into the array.
+     * @return Amount of names read.
+     */
+    public abstract int recordFieldNames(Pointer field, Pointer[] names, int capacity);
+
     /**
      * Set a callback for liblognorm debug logging
      *
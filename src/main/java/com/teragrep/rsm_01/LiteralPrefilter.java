@@ -0,0 +1,317 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the literal text that the rules of a rulebase start with. A message that does not start with the leading
+ * literal of any rule can't match the rulebase, and is rejected without calling liblognorm. Rejected messages get the
+ * same return code and error information liblognorm would produce for them.
+ * <p>
+ * The literals are kept in a trie. liblognorm merges chains of literal characters into single literals, so parsing
+ * stops at the last branch of the chain the message followed; the unparsed position of a rejected message is computed
+ * the same way. Rulebases that include other files, that have a rule starting with a field, or that have a line the
+ * index does not recognize, such as a rule with leading whitespace or a rule continued on the next line, are not
+ * filtered, so that the index never rejects a message liblognorm would match.
+ */
+public final class LiteralPrefilter {
+
+    /**
+     * Return code of liblognorm for messages that do not match any rule.
+     */
+    public static final int NO_MATCH = -1000;
+
+    private static final LiteralPrefilter ACCEPT_ALL = new LiteralPrefilter(null);
+    private static final int FIRST_PRINTABLE = 0x20;
+
+    private final Node root;
+
+    private LiteralPrefilter(final Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return shared LiteralPrefilter that accepts every message, used when prefiltering is not enabled.
+     */
+    public static LiteralPrefilter acceptAll() {
+        return ACCEPT_ALL;
+    }
+
+    /**
+     * Build the index of the leading literals of the rules of a version 2 rulebase.
+     *
+     * @param rulebase The string with the actual rulebase.
+     * @return LiteralPrefilter of the rulebase, or one that accepts every message if the rulebase can't be filtered.
+     */
+    public static LiteralPrefilter of(final String rulebase) {
+        final List<String> literals = new ArrayList<>();
+        final String[] lines = rulebase.split("\n");
+        String prefix = "";
+        boolean filterable = true;
+        for (int i = 0; filterable && i < lines.length; i++) {
+            String line = lines[i];
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (line.startsWith("prefix=")) {
+                prefix = line.substring("prefix=".length());
+            }
+            else if (line.startsWith("extendprefix=")) {
+                prefix = prefix + line.substring("extendprefix=".length());
+            }
+            else if (line.startsWith("rule=")) {
+                final int colon = line.indexOf(':');
+                // A rule without the colon is malformed, and one starting with a field can match any message
+                final String literal = colon < 0 ? "" : leadingLiteral(prefix + line.substring(colon + 1));
+                filterable = !literal.isEmpty();
+                literals.add(literal);
+            }
+            else {
+                filterable = isIgnored(line);
+            }
+        }
+        LiteralPrefilter prefilter = ACCEPT_ALL;
+        if (filterable && !literals.isEmpty()) {
+            final Node root = new Node();
+            for (final String literal : literals) {
+                root.add(literal, 0);
+            }
+            prefilter = new LiteralPrefilter(root);
+        }
+        return prefilter;
+    }
+
+    /**
+     * Returns true for the lines that neither add a rule nor change the prefix: empty lines, comments, the version
+     * header, annotations and user-defined types. Includes and every other line make the rulebase unfilterable.
+     */
+    private static boolean isIgnored(final String line) {
+        return line.isEmpty() || line.startsWith("#") || line.startsWith("version=") || line.startsWith("annotate=")
+                || line.startsWith("type=");
+    }
+
+    /**
+     * Returns the text a rule starts with before its first field. %% is a literal percent sign. Trailing whitespace of
+     * a rule that has no fields is dropped, so that the literal is a prefix of every message the rule matches either
+     * way.
+     */
+    private static String leadingLiteral(final String pattern) {
+        final StringBuilder literal = new StringBuilder();
+        boolean field = false;
+        int i = 0;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            if (c == '%') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '%') {
+                    i++;
+                }
+                else {
+                    field = true;
+                    break;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        if (!field) {
+            int end = literal.length();
+            while (end > 0 && Character.isWhitespace(literal.charAt(end - 1))) {
+                end--;
+            }
+            literal.setLength(end);
+        }
+        return literal.toString();
+    }
+
+    /**
+     * @return true if this prefilter may reject messages.
+     */
+    public boolean isFiltering() {
+        return root != null;
+    }
+
+    /**
+     * Check whether the message can match the rulebase.
+     *
+     * @param text The message string to check.
+     * @return -1 if the message may match, otherwise the position where liblognorm stops parsing the message.
+     */
+    public int reject(final String text) {
+        int position = -1;
+        if (root != null) {
+            Node node = root;
+            int parsed = 0;
+            int i = 0;
+            // Walks until a rule literal is fully matched or the message leaves the trie
+            while (node != null && !node.terminal) {
+                if (node.isBranch()) {
+                    parsed = i;
+                }
+                node = i < text.length() ? node.child(text.charAt(i)) : null;
+                i++;
+            }
+            if (node == null) {
+                position = parsed;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns the error information liblognorm produces for a message that does not match the rulebase.
+     *
+     * @param text     The message string that was rejected.
+     * @param position Position returned by reject().
+     * @return error information as a JSON string object.
+     */
+    public static String errorResult(final String text, final int position) {
+        final StringBuilder json = new StringBuilder(text.length() * 2 + 40);
+        json.append("{ \"originalmsg\": ");
+        appendString(json, text);
+        json.append(", \"unparsed-data\": ");
+        appendString(json, text.substring(position));
+        json.append(" }");
+        return json.toString();
+    }
+
+    /**
+     * Appends a json string escaped the way json-c escapes strings.
+     */
+    private static void appendString(final StringBuilder json, final String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '/':
+                    json.append("\\/");
+                    break;
+                case '\b':
+                    json.append("\\b");
+                    break;
+                case '\f':
+                    json.append("\\f");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < FIRST_PRINTABLE) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Trie node holding the children in a sorted array, which keeps the index compact.
+     */
+    private static final class Node {
+
+        private char[] keys;
+        private Node[] children;
+        private boolean terminal;
+
+        private Node() {
+            this.keys = new char[0];
+            this.children = new Node[0];
+            this.terminal = false;
+        }
+
+        private void add(final String literal, final int depth) {
+            if (depth == literal.length()) {
+                terminal = true;
+                return;
+            }
+            final char c = literal.charAt(depth);
+            int index = Arrays.binarySearch(keys, c);
+            if (index < 0) {
+                index = -index - 1;
+                final char[] newKeys = new char[keys.length + 1];
+                final Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(children, 0, newChildren, 0, index);
+                newKeys[index] = c;
+                newChildren[index] = new Node();
+                System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+                keys = newKeys;
+                children = newChildren;
+            }
+            children[index].add(literal, depth + 1);
+        }
+
+        private Node child(final char c) {
+            final int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        /**
+         * @return true if liblognorm ends a merged literal at this node.
+         */
+        private boolean isBranch() {
+            return children.length != 1;
+        }
+    }
+}
@@ -50,14 +50,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-public final class LognormFactory {
+public final class LognormFactory implements LognormSource {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LognormFactory.class);
 
     private final LibJavaLognorm.OptionsStruct options;
     private final String samples;
     private final boolean fileUsed;
+    private final LognormBinding binding;
+    private final LognormMetrics metrics;
+    private final LiteralPrefilter prefilter;
+    private final List<List<String>> projection;
+    private final ResultFormat resultFormat;
+    private final SlowMessageProfiler profiler;
+    private final NormalizationGuard guard;
 
     public LognormFactory(final String samples) {
         this(new LibJavaLognorm.OptionsStruct(), samples, false);
@@ -76,9 +91,61 @@ public final class LognormFactory {
     }
 
     public LognormFactory(final LibJavaLognorm.OptionsStruct options, final String samples, final boolean fileUsed) {
+        this(options, samples, fileUsed, new ProxyLognormBinding());
+    }
+
+    public LognormFactory(
+            final LibJavaLognorm.OptionsStruct options,
+            final String samples,
+            final boolean fileUsed,
+            final LognormBinding binding
+    ) {
+        this(options, samples, fileUsed, binding, LognormMetrics.disabled());
+    }
+
+    public LognormFactory(
+            final LibJavaLognorm.OptionsStruct options,
+            final String samples,
+            final boolean fileUsed,
+            final LognormBinding binding,
+            final LognormMetrics metrics
+    ) {
+        this(
+                options,
+                samples,
+                fileUsed,
+                binding,
+                metrics,
+                LiteralPrefilter.acceptAll(),
+                Collections.emptyList(),
+                ResultFormat.JSON,
+                SlowMessageProfiler.disabled(),
+                NormalizationGuard.unbounded()
+        );
+    }
+
+    private LognormFactory(
+            final LibJavaLognorm.OptionsStruct options,
+            final String samples,
+            final boolean fileUsed,
+            final LognormBinding binding,
+            final LognormMetrics metrics,
+            final LiteralPrefilter prefilter,
+            final List<List<String>> projection,
+            final ResultFormat resultFormat,
+            final SlowMessageProfiler profiler,
+            final NormalizationGuard guard
+    ) {
         this.options = options;
         this.samples = samples;
         this.fileUsed = fileUsed;
+        this.binding = binding;
+        this.metrics = metrics;
+        this.prefilter = prefilter;
+        this.projection = projection;
+        this.resultFormat = resultFormat;
+        this.profiler = profiler;
+        this.guard = guard;
     }
 
     /**
@@ -86,7 +153,267 @@ public final class LognormFactory {
      *
      * @return Configured version of JavaLognormImpl.
      */
+    @Override
     public JavaLognormImpl lognorm() {
+        return new JavaLognormImpl(liblognormInitCtx(), binding, metrics, estimatedBytes(), prefilter, profiler, guard);
+    }
+
+    /**
+     * Load the rulebase once into a context whose parse tree is shared by every JavaLognormImpl the returned
+     * CompiledRulebase creates. Creating additional contexts from it does not load the rulebase again. Sharing relies
+     * on normalization only reading the parse tree, which does not hold when liblognorm is built with advanced
+     * statistics.
+     *
+     * @return CompiledRulebase holding the loaded rulebase.
+     */
+    public CompiledRulebase compile() {
+        if (LibJavaLognorm.jnaInstance.hasAdvancedStats()) {
+            throw new IllegalStateException(
+                    "Rulebase can't be shared between contexts when liblognorm is built with advanced statistics"
+            );
+        }
+        return new CompiledRulebase(
+                liblognormInitCtx(),
+                binding,
+                metrics,
+                estimatedBytes(),
+                prefilter,
+                profiler,
+                guard
+        );
+    }
+
+    /**
+     * Create a factory that loads the given rulebase with the options, binding and metrics of this factory.
+     *
+     * @param rulebase The string with the actual rulebase.
+     * @return LognormFactory using the given rulebase.
+     */
+    public LognormFactory withRulebase(final String rulebase) {
+        final LognormFactory lognormFactory = new LognormFactory(
+                options,
+                rulebase,
+                false,
+                binding,
+                metrics,
+                LiteralPrefilter.acceptAll(),
+                projection,
+                resultFormat,
+                profiler,
+                guard
+        );
+        return prefilter == LiteralPrefilter.acceptAll() ? lognormFactory : lognormFactory.withPrefilter();
+    }
+
+    /**
+     * Create a factory that loads the given rulebase file with the options, binding and metrics of this factory.
+     *
+     * @param samplesFile The rulebase file.
+     * @return LognormFactory using the given rulebase file.
+     */
+    public LognormFactory withRulebase(final File samplesFile) {
+        final LognormFactory lognormFactory = new LognormFactory(
+                options,
+                samplesFile.getAbsolutePath(),
+                true,
+                binding,
+                metrics,
+                LiteralPrefilter.acceptAll(),
+                projection,
+                resultFormat,
+                profiler,
+                guard
+        );
+        return prefilter == LiteralPrefilter.acceptAll() ? lognormFactory : lognormFactory.withPrefilter();
+    }
+
+    /**
+     * Create a factory that rejects messages which can't match any rule of the rulebase in Java, without calling
+     * liblognorm. The leading literals of the rules are indexed once when this method is called. Rejected messages fail
+     * normalization with the same return code and error information liblognorm would produce.
+     *
+     * @return LognormFactory that prefilters messages.
+     * @see LiteralPrefilter
+     */
+    public LognormFactory withPrefilter() {
+        final String rulebase;
+        if (fileUsed) {
+            try {
+                rulebase = new String(Files.readAllBytes(Paths.get(samples)), StandardCharsets.UTF_8);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read rulebase file <" + samples + ">", e);
+            }
+        }
+        else {
+            rulebase = samples;
+        }
+        return new LognormFactory(
+                options,
+                samples,
+                fileUsed,
+                binding,
+                metrics,
+                LiteralPrefilter.of(rulebase),
+                projection,
+                resultFormat,
+                profiler,
+                guard
+        );
+    }
+
+    /**
+     * Create a factory whose contexts return only the given top level fields of successfully normalized messages.
+     *
+     * @param fields Names of the fields to return.
+     * @return LognormFactory that projects the results.
+     * @see #withProjection(List)
+     */
+    public LognormFactory withProjection(final String ... fields) {
+        final List<List<String>> paths = new ArrayList<>(fields.length);
+        for (String field : fields) {
+            paths.add(Collections.singletonList(field));
+        }
+        return withProjection(paths);
+    }
+
+    /**
+     * Create a factory whose contexts return only the given fields of successfully normalized messages. Each field is
+     * given as a path of field names, for example ("metadata", "rule", "mockup"). The other fields, including the
+     * originalmsg and metadata fields added by the options, are pruned from the result in C before it is serialized,
+     * which makes the results smaller to serialize, transfer and parse. Error information of failed messages is not
+     * pruned. Per-rule hit counts of LognormMetrics require the projection to include the rule mockup.
+     *
+     * @param paths Paths of the fields to return.
+     * @return LognormFactory that projects the results.
+     */
+    public LognormFactory withProjection(final List<List<String>> paths) {
+        final List<List<String>> copy = new ArrayList<>(paths.size());
+        for (List<String> path : paths) {
+            if (path.isEmpty()) {
+                throw new IllegalArgumentException("Projected field path must not be empty");
+            }
+            copy.add(Collections.unmodifiableList(new ArrayList<>(path)));
+        }
+        return new LognormFactory(
+                options,
+                samples,
+                fileUsed,
+                binding,
+                metrics,
+                prefilter,
+                Collections.unmodifiableList(copy),
+                resultFormat,
+                profiler,
+                guard
+        );
+    }
+
+    /**
+     * Create a factory whose contexts serialize the results returned as bytes, by normalizeBytes() and the ByteBuffer
+     * variant of normalize(), in the given format. The default is ResultFormat.JSON. Results returned as Strings are
+     * always JSON.
+     *
+     * @param format Serialization of results returned as bytes.
+     * @return LognormFactory using the given result format.
+     */
+    public LognormFactory withResultFormat(final ResultFormat format) {
+        return new LognormFactory(
+                options,
+                samples,
+                fileUsed,
+                binding,
+                metrics,
+                prefilter,
+                projection,
+                format,
+                profiler,
+                guard
+        );
+    }
+
+    /**
+     * Create a factory whose contexts capture their slowest messages into the given profiler. Contexts created by
+     * compile() share the profiler as well.
+     *
+     * @param slowMessageProfiler Profiler that captures the slowest messages.
+     * @return LognormFactory that profiles normalization.
+     */
+    public LognormFactory withProfiler(final SlowMessageProfiler slowMessageProfiler) {
+        return new LognormFactory(
+                options,
+                samples,
+                fileUsed,
+                binding,
+                metrics,
+                prefilter,
+                projection,
+                resultFormat,
+                slowMessageProfiler,
+                guard
+        );
+    }
+
+    /**
+     * Create a factory whose contexts limit the length of the messages they normalize with the given guard. The
+     * deadline of the guard is enforced by a GuardedJavaLognorm created from the returned factory.
+     *
+     * @param normalizationGuard Guard that limits the messages and counts the limited ones.
+     * @return LognormFactory that guards normalization.
+     * @see GuardedJavaLognorm
+     */
+    public LognormFactory withGuard(final NormalizationGuard normalizationGuard) {
+        return new LognormFactory(
+                options,
+                samples,
+                fileUsed,
+                binding,
+                metrics,
+                prefilter,
+                projection,
+                resultFormat,
+                profiler,
+                normalizationGuard
+        );
+    }
+
+    /**
+     * Guard applied by the contexts of this factory, NormalizationGuard.unbounded() unless one was given with
+     * withGuard().
+     *
+     * @return NormalizationGuard of this factory.
+     */
+    public NormalizationGuard guard() {
+        return guard;
+    }
+
+    /**
+     * Metrics recorded by this factory and every JavaLognormImpl it creates. Metrics are disabled unless a
+     * LognormMetrics was given to the constructor.
+     *
+     * @return LognormMetrics of this factory.
+     */
+    public LognormMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Estimated native memory of a context that has the rulebase of this factory loaded.
+     *
+     * @return estimated bytes.
+     */
+    long estimatedBytes() {
+        final long rulebaseBytes = fileUsed ? new File(samples).length() : samples.length();
+        return NativeMemoryTracker.contextBytes(rulebaseBytes);
+    }
+
+    /**
+     * Initialize a liblognorm context with the options and the rulebase of this factory.
+     *
+     * @return Pointer to the configured liblognorm context.
+     */
+    private Pointer liblognormInitCtx() {
+        final long start = metrics.start();
         final Pointer ctx = LibJavaLognorm.jnaInstance.initCtx();
         // Do java exception handling that can't be done in C.
         if (ctx == Pointer.NULL) {
@@ -102,6 +429,18 @@ public final class LognormFactory {
         }
         // Load options
         LibJavaLognorm.jnaInstance.setCtxOpts(ctx, options);
+        // Load projection
+        if (!projection.isEmpty()) {
+            liblognormSetProjection(ctx);
+        }
+        // Load result format
+        if (resultFormat != ResultFormat.JSON) {
+            final int i = LibJavaLognorm.jnaInstance.setResultFormat(ctx, resultFormat.code());
+            if (i != 0) {
+                LOGGER.error("setResultFormat() returned error code <{}>", i);
+                throw new IllegalArgumentException("setResultFormat() returned " + i + " instead of 0");
+            }
+        }
         // Load samples
         if (fileUsed) {
             liblognormLoadSamples(ctx, samples);
@@ -109,7 +448,8 @@ public final class LognormFactory {
         else {
             liblognormLoadSamplesFromString(ctx, samples);
         }
-        return new JavaLognormImpl(ctx);
+        metrics.contextBuilt(start);
+        return ctx;
     }
 
     /**
@@ -118,8 +458,8 @@ public final class LognormFactory {
      * @param ctx      Pointer to the liblognorm context.
      * @param rulebase The string with the actual rulebase.
      */
-    private void liblognormLoadSamplesFromString(Pointer ctx, String rulebase) {
-        int i = LibJavaLognorm.jnaInstance.loadSamplesFromString(ctx, rulebase);
+    private void liblognormLoadSamplesFromString(final Pointer ctx, final String rulebase) {
+        final int i = LibJavaLognorm.jnaInstance.loadSamplesFromString(ctx, rulebase);
         if (i != 0) {
             LOGGER.error("ln_loadSamplesFromString() returned error code <{}>", i);
             throw new IllegalArgumentException("ln_loadSamplesFromString() returned " + i + " instead of 0");
@@ -132,8 +472,8 @@ public final class LognormFactory {
      * @param ctx          Pointer to the liblognorm context.
      * @param rulebaseFile Name of file to be loaded.
      */
-    private void liblognormLoadSamples(Pointer ctx, String rulebaseFile) {
-        int i = LibJavaLognorm.jnaInstance.loadSamples(ctx, rulebaseFile);
+    private void liblognormLoadSamples(final Pointer ctx, final String rulebaseFile) {
+        final int i = LibJavaLognorm.jnaInstance.loadSamples(ctx, rulebaseFile);
         if (i != 0) {
             LOGGER.error("ln_loadSamples() returned error code <{}>", i);
             throw new IllegalArgumentException("ln_loadSamples() returned " + i + " instead of 0");
@@ -144,14 +484,34 @@ public final class LognormFactory {
         }
     }
 
+    /**
+     * Restrict the results of the library context to the projected fields.
+     *
+     * @param ctx Pointer to the liblognorm context.
+     */
+    private void liblognormSetProjection(final Pointer ctx) {
+        final List<String> names = new ArrayList<>();
+        final int[] depths = new int[projection.size()];
+        for (int i = 0; i < depths.length; i++) {
+            names.addAll(projection.get(i));
+            depths[i] = projection.get(i).size();
+        }
+        final int i = LibJavaLognorm.jnaInstance
+                .setProjection(ctx, names.toArray(new String[0]), depths, depths.length);
+        if (i != 0) {
+            LOGGER.error("setProjection() returned error code <{}>", i);
+            throw new IllegalArgumentException("setProjection() returned " + i + " instead of 0");
+        }
+    }
+
     /**
      * Set a callback for liblognorm debug message logging.
      *
      * @param ctx Pointer to the liblognorm context.
      */
-    private void liblognormSetDebugCB(Pointer ctx) {
-        LibJavaLognorm.DebugCallback.DebugCallbackImpl callbackImpl = new LibJavaLognorm.DebugCallback.DebugCallbackImpl();
-        int i = LibJavaLognorm.jnaInstance.setDebugCB(ctx, callbackImpl);
+    private void liblognormSetDebugCB(final Pointer ctx) {
+        final LibJavaLognorm.DebugCallback.DebugCallbackImpl callbackImpl = new LibJavaLognorm.DebugCallback.DebugCallbackImpl();
+        final int i = LibJavaLognorm.jnaInstance.setDebugCB(ctx, callbackImpl);
         if (i != 0) {
             LOGGER.error("ln_setDebugCB() returned error code <{}>", i);
             throw new IllegalArgumentException("ln_setDebugCB() returned " + i + " instead of 0");
@@ -163,9 +523,9 @@ public final class LognormFactory {
      *
      * @param ctx Pointer to the liblognorm context.
      */
-    private void liblognormSetErrMsgCB(Pointer ctx) {
-        LibJavaLognorm.ErrorCallback.ErrorCallbackImpl callbackImpl = new LibJavaLognorm.ErrorCallback.ErrorCallbackImpl();
-        int i = LibJavaLognorm.jnaInstance.setErrMsgCB(ctx, callbackImpl);
+    private void liblognormSetErrMsgCB(final Pointer ctx) {
+        final LibJavaLognorm.ErrorCallback.ErrorCallbackImpl callbackImpl = new LibJavaLognorm.ErrorCallback.ErrorCallbackImpl();
+        final int i = LibJavaLognorm.jnaInstance.setErrMsgCB(ctx, callbackImpl);
         if (i != 0) {
             LOGGER.error("ln_setErrMsgCB() returned error code <{}>", i);
             throw new IllegalArgumentException("ln_setErrMsgCB() returned " + i + " instead of 0");
@@ -0,0 +1,316 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Normalization metrics shared by a LognormFactory and every JavaLognormImpl it creates. All counters are striped so
+ * that recording does not contend between threads. A disabled instance records nothing, which makes the cost of the
+ * instrumentation a single branch per call. The metrics can be exported as an MXBean with register().
+ */
+public final class LognormMetrics implements LognormMetricsMXBean {
+
+    private static final LognormMetrics DISABLED = new LognormMetrics(false);
+    private static final int LATENCY_BUCKETS = 24;
+    // First bucket holds calls faster than 2^10 nanoseconds, each following bucket doubles the bound.
+    private static final int LATENCY_SHIFT = 10;
+
+    private final boolean enabled;
+    private final LongAdder normalized;
+    private final LongAdder succeeded;
+    private final LongAdder failed;
+    private final LongAdder[] latencyBuckets;
+    private final LongAdder latencyCalls;
+    private final LongAdder latencyNanos;
+    private final LongAdder contextsBuilt;
+    private final LongAdder contextBuildNanos;
+    private final LongAdder liveContexts;
+    private final Map<String, LongAdder> ruleHits;
+
+    public LognormMetrics() {
+        this(true);
+    }
+
+    public LognormMetrics(final boolean enabled) {
+        this.enabled = enabled;
+        this.normalized = new LongAdder();
+        this.succeeded = new LongAdder();
+        this.failed = new LongAdder();
+        this.latencyBuckets = new LongAdder[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+        this.latencyCalls = new LongAdder();
+        this.latencyNanos = new LongAdder();
+        this.contextsBuilt = new LongAdder();
+        this.contextBuildNanos = new LongAdder();
+        this.liveContexts = new LongAdder();
+        this.ruleHits = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return shared LognormMetrics that records nothing.
+     */
+    public static LognormMetrics disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Registers the metrics to the platform MBeanServer as com.teragrep.rsm_01:type=LognormMetrics,name=&lt;name&gt;.
+     *
+     * @param name Name that identifies the metrics, for example the name of the rulebase.
+     * @return ObjectName of the registered MXBean.
+     */
+    public ObjectName register(final String name) {
+        try {
+            final ObjectName objectName = objectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Failed to register LognormMetrics with name <" + name + ">", e);
+        }
+    }
+
+    /**
+     * Removes the metrics registered with register() from the platform MBeanServer.
+     *
+     * @param name Name that was given to register().
+     */
+    public void unregister(final String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName(name));
+        }
+        catch (InstanceNotFoundException | MBeanRegistrationException e) {
+            throw new IllegalStateException("Failed to unregister LognormMetrics with name <" + name + ">", e);
+        }
+    }
+
+    private static ObjectName objectName(final String name) {
+        try {
+            return new ObjectName("com.teragrep.rsm_01:type=LognormMetrics,name=" + ObjectName.quote(name));
+        }
+        catch (JMException e) {
+            throw new IllegalArgumentException("Invalid LognormMetrics name <" + name + ">", e);
+        }
+    }
+
+    /**
+     * @return System.nanoTime() if metrics are enabled, 0 otherwise so that disabled metrics skip the clock.
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records a call that normalized a single message.
+     *
+     * @param start   Value returned by start() before the call.
+     * @param success true if the message was normalized successfully.
+     */
+    void normalized(final long start, final boolean success) {
+        if (!enabled) {
+            return;
+        }
+        final long nanos = System.nanoTime() - start;
+        final int bucket = Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos >>> LATENCY_SHIFT));
+        latencyBuckets[bucket].increment();
+        latencyCalls.increment();
+        latencyNanos.add(nanos);
+        messages(1, success ? 0 : 1);
+    }
+
+    /**
+     * Records messages normalized by a batch call.
+     *
+     * @param count    Amount of messages normalized.
+     * @param failures Amount of messages that failed normalization.
+     */
+    void messages(final int count, final int failures) {
+        if (!enabled) {
+            return;
+        }
+        normalized.add(count);
+        succeeded.add(count - failures);
+        failed.add(failures);
+    }
+
+    /**
+     * Records a successful match of the given rule.
+     *
+     * @param rule Rule mockup from the rule metadata of the result.
+     */
+    void ruleHit(final String rule) {
+        if (!enabled) {
+            return;
+        }
+        LongAdder hits = ruleHits.get(rule);
+        if (hits == null) {
+            hits = ruleHits.computeIfAbsent(rule, r -> new LongAdder());
+        }
+        hits.increment();
+    }
+
+    /**
+     * Records the time spent building a context.
+     *
+     * @param start Value returned by start() before building the context.
+     */
+    void contextBuilt(final long start) {
+        if (!enabled) {
+            return;
+        }
+        contextBuildNanos.add(System.nanoTime() - start);
+        contextsBuilt.increment();
+    }
+
+    void contextOpened() {
+        if (enabled) {
+            liveContexts.increment();
+        }
+    }
+
+    void contextClosed() {
+        if (enabled) {
+            liveContexts.decrement();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public long getMessagesNormalized() {
+        return normalized.sum();
+    }
+
+    @Override
+    public long getMessagesSucceeded() {
+        return succeeded.sum();
+    }
+
+    @Override
+    public long getMessagesFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        final long[] histogram = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            histogram[i] = latencyBuckets[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public long[] getLatencyBucketBoundsNanos() {
+        final long[] bounds = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            bounds[i] = 1L << (LATENCY_SHIFT + i);
+        }
+        return bounds;
+    }
+
+    @Override
+    public long getMeanLatencyNanos() {
+        final long calls = latencyCalls.sum();
+        return calls == 0 ? 0 : latencyNanos.sum() / calls;
+    }
+
+    @Override
+    public long getContextsBuilt() {
+        return contextsBuilt.sum();
+    }
+
+    @Override
+    public long getMeanContextBuildNanos() {
+        final long built = contextsBuilt.sum();
+        return built == 0 ? 0 : contextBuildNanos.sum() / built;
+    }
+
+    @Override
+    public long getLiveContexts() {
+        return liveContexts.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRuleHits() {
+        final Map<String, Long> hits = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : ruleHits.entrySet()) {
+            hits.put(entry.getKey(), entry.getValue().sum());
+        }
+        return hits;
+    }
+
+    @Override
+    public void reset() {
+        normalized.reset();
+        succeeded.reset();
+        failed.reset();
+        for (LongAdder bucket : latencyBuckets) {
+            bucket.reset();
+        }
+        latencyCalls.reset();
+        latencyNanos.reset();
+        contextsBuilt.reset();
+        contextBuildNanos.reset();
+        ruleHits.clear();
+    }
+}
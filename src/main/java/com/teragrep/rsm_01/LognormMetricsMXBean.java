@@ -0,0 +1,115 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.Map;
+
+/**
+ * Management interface of LognormMetrics exported through JMX.
+ */
+public interface LognormMetricsMXBean {
+
+    /**
+     * @return true if metrics are being recorded.
+     */
+    public abstract boolean isEnabled();
+
+    /**
+     * @return amount of messages normalized, including batch messages.
+     */
+    public abstract long getMessagesNormalized();
+
+    /**
+     * @return amount of messages normalized successfully.
+     */
+    public abstract long getMessagesSucceeded();
+
+    /**
+     * @return amount of messages that failed normalization.
+     */
+    public abstract long getMessagesFailed();
+
+    /**
+     * @return amount of calls to normalize a single message in each latency bucket, see getLatencyBucketBoundsNanos().
+     */
+    public abstract long[] getLatencyHistogram();
+
+    /**
+     * @return exclusive upper bound in nanoseconds of each latency bucket. The last bucket also holds every slower
+     *         call.
+     */
+    public abstract long[] getLatencyBucketBoundsNanos();
+
+    /**
+     * @return mean latency of calls to normalize a single message in nanoseconds, 0 if there have been no calls.
+     */
+    public abstract long getMeanLatencyNanos();
+
+    /**
+     * @return amount of liblognorm contexts built by loading the rulebase.
+     */
+    public abstract long getContextsBuilt();
+
+    /**
+     * @return mean time spent building a liblognorm context in nanoseconds, 0 if no context has been built.
+     */
+    public abstract long getMeanContextBuildNanos();
+
+    /**
+     * @return amount of JavaLognormImpl objects that have been created and not yet closed.
+     */
+    public abstract long getLiveContexts();
+
+    /**
+     * @return amount of successfully normalized messages per matched rule. Requires CTXOPT_ADD_RULE to be enabled.
+     */
+    public abstract Map<String, Long> getRuleHits();
+
+    /**
+     * Resets all counters except the live context count.
+     */
+    public abstract void reset();
+}
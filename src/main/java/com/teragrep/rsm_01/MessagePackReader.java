@@ -0,0 +1,286 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoder of the MessagePack encoded results produced with ResultFormat.MESSAGEPACK. Maps are decoded to LinkedHashMap
+ * objects keeping the order of the fields, arrays to List objects, integers to Long, floating point numbers to Double,
+ * strings to String, booleans to Boolean and nil to null. Binary and extension types are not produced by the encoder
+ * and are not supported.
+ */
+public final class MessagePackReader {
+
+    private static final int UINT8_MASK = 0xff;
+    private static final int UINT16_MASK = 0xffff;
+    private static final long UINT32_MASK = 0xffffffffL;
+    private static final int POSITIVE_FIXINT_MAX = 0x7f;
+    private static final int FIXMAP_MAX = 0x8f;
+    private static final int FIXARRAY_MAX = 0x9f;
+    private static final int FIXSTR_MAX = 0xbf;
+    private static final int NEGATIVE_FIXINT_MIN = 0xe0;
+    private static final int FIXCOLLECTION_LENGTH_MASK = 0x0f;
+    private static final int FIXSTR_LENGTH_MASK = 0x1f;
+    private static final int NIL = 0xc0;
+    private static final int FALSE = 0xc2;
+    private static final int TRUE = 0xc3;
+    private static final int FLOAT32 = 0xca;
+    private static final int FLOAT64 = 0xcb;
+    private static final int UINT8 = 0xcc;
+    private static final int UINT16 = 0xcd;
+    private static final int UINT32 = 0xce;
+    private static final int UINT64 = 0xcf;
+    private static final int INT8 = 0xd0;
+    private static final int INT16 = 0xd1;
+    private static final int INT32 = 0xd2;
+    private static final int INT64 = 0xd3;
+    private static final int STR8 = 0xd9;
+    private static final int STR16 = 0xda;
+    private static final int STR32 = 0xdb;
+    private static final int ARRAY16 = 0xdc;
+    private static final int ARRAY32 = 0xdd;
+    private static final int MAP16 = 0xde;
+    private static final int MAP32 = 0xdf;
+
+    private final ByteBuffer buffer;
+
+    public MessagePackReader(final byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @param buffer Buffer holding the encoded values between its position and limit. Reading advances the position.
+     */
+    public MessagePackReader(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return true if there are bytes left to read.
+     */
+    public boolean hasNext() {
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * Read the next value.
+     *
+     * @return decoded value.
+     * @throws IllegalArgumentException if the bytes are not a supported MessagePack value.
+     */
+    public Object next() {
+        try {
+            return read();
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated MessagePack value", e);
+        }
+    }
+
+    /**
+     * Read a map value, such as a normalization result.
+     *
+     * @return decoded map.
+     * @throws IllegalArgumentException if the next value is not a map.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> nextMap() {
+        final Object value = next();
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("MessagePack value is not a map");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private Object read() {
+        final int type = buffer.get() & UINT8_MASK;
+        final Object value;
+        if (type <= POSITIVE_FIXINT_MAX) {
+            value = (long) type;
+        }
+        else if (type <= FIXMAP_MAX) {
+            value = readMap(type & FIXCOLLECTION_LENGTH_MASK);
+        }
+        else if (type <= FIXARRAY_MAX) {
+            value = readArray(type & FIXCOLLECTION_LENGTH_MASK);
+        }
+        else if (type <= FIXSTR_MAX) {
+            value = readString(type & FIXSTR_LENGTH_MASK);
+        }
+        else if (type >= NEGATIVE_FIXINT_MIN) {
+            value = (long) (byte) type;
+        }
+        else {
+            value = readTyped(type);
+        }
+        return value;
+    }
+
+    private Object readTyped(final int type) {
+        final Object value;
+        switch (type) {
+            case NIL:
+                value = null;
+                break;
+            case FALSE:
+                value = Boolean.FALSE;
+                break;
+            case TRUE:
+                value = Boolean.TRUE;
+                break;
+            case FLOAT32:
+                value = (double) buffer.getFloat();
+                break;
+            case FLOAT64:
+                value = buffer.getDouble();
+                break;
+            case UINT8:
+                value = (long) (buffer.get() & UINT8_MASK);
+                break;
+            case UINT16:
+                value = (long) (buffer.getShort() & UINT16_MASK);
+                break;
+            case UINT32:
+                value = buffer.getInt() & UINT32_MASK;
+                break;
+            case UINT64:
+            case INT64:
+                value = buffer.getLong();
+                break;
+            case INT8:
+                value = (long) buffer.get();
+                break;
+            case INT16:
+                value = (long) buffer.getShort();
+                break;
+            case INT32:
+                value = (long) buffer.getInt();
+                break;
+            case STR8:
+                value = readString(buffer.get() & UINT8_MASK);
+                break;
+            case STR16:
+                value = readString(buffer.getShort() & UINT16_MASK);
+                break;
+            case STR32:
+                value = readString(length(buffer.getInt()));
+                break;
+            case ARRAY16:
+                value = readArray(buffer.getShort() & UINT16_MASK);
+                break;
+            case ARRAY32:
+                value = readArray(length(buffer.getInt()));
+                break;
+            case MAP16:
+                value = readMap(buffer.getShort() & UINT16_MASK);
+                break;
+            case MAP32:
+                value = readMap(length(buffer.getInt()));
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported MessagePack type <0x" + Integer.toHexString(type) + ">"
+                );
+        }
+        return value;
+    }
+
+    private int length(final int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("MessagePack length exceeds the maximum array size");
+        }
+        return length;
+    }
+
+    private String readString(final int length) {
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final String value;
+        if (buffer.hasArray()) {
+            value = new String(
+                    buffer.array(),
+                    buffer.arrayOffset() + buffer.position(),
+                    length,
+                    StandardCharsets.UTF_8
+            );
+            buffer.position(buffer.position() + length);
+        }
+        else {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private List<Object> readArray(final int length) {
+        final List<Object> values = new ArrayList<>(Math.min(length, buffer.remaining()));
+        for (int i = 0; i < length; i++) {
+            values.add(read());
+        }
+        return values;
+    }
+
+    private Map<String, Object> readMap(final int length) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < length; i++) {
+            final Object key = read();
+            if (!(key instanceof String)) {
+                throw new IllegalArgumentException("MessagePack map key is not a string");
+            }
+            values.put((String) key, read());
+        }
+        return values;
+    }
+}
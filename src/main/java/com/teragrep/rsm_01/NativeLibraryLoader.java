@@ -0,0 +1,298 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+
+/**
+ * Resolves the native library that the JNA bindings load. The library built by the project is bundled in the jar under
+ * the JNA resource prefix of the platform, for example linux-x86-64/libJavaLognorm.so. JNA would extract it into a new
+ * temporary file on every start, so instead the library is extracted once into a cache directory under a name derived
+ * from its content, and later processes load the same file. The system property rsm_01.library.path overrides the
+ * library file and rsm_01.library.cacheDir the cache directory. If the library is not bundled, JNA searches for it by
+ * name.
+ * <p>
+ * The default cache directory is under java.io.tmpdir, where other users can create files. The directory is created
+ * accessible only to its owner and is not used if it is owned by another user or writable by others, and an already
+ * extracted library is loaded only if its content matches the hash in its name.
+ */
+final class NativeLibraryLoader {
+
+    static final String LIBRARY_NAME = "JavaLognorm";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeLibraryLoader.class);
+    private static final int COPY_BUFFER_SIZE = 8192;
+    // 16 bytes are plenty to tell library builds apart
+    private static final int HASH_PREFIX_BYTES = 16;
+
+    private NativeLibraryLoader() {
+    }
+
+    /**
+     * @return absolute path of the native library, or its name if it must be searched by JNA.
+     */
+    static String library() {
+        return Holder.LIBRARY;
+    }
+
+    private static String resolve() {
+        final String configured = System.getProperty("rsm_01.library.path");
+        final String library;
+        if (configured == null) {
+            library = bundled();
+        }
+        else {
+            library = new File(configured).getAbsolutePath();
+        }
+        LOGGER.debug("Loading native library <{}>", library);
+        return library;
+    }
+
+    /**
+     * @return path of the library bundled for the platform, or its name if it must be searched by JNA.
+     */
+    private static String bundled() {
+        final String fileName = System.mapLibraryName(LIBRARY_NAME);
+        final URL resource = NativeLibraryLoader.class
+                .getClassLoader()
+                .getResource(Platform.RESOURCE_PREFIX + "/" + fileName);
+        String library = LIBRARY_NAME;
+        if (resource == null) {
+            LOGGER.debug("Native library <{}> is not bundled for <{}>", fileName, Platform.RESOURCE_PREFIX);
+        }
+        else if ("file".equals(resource.getProtocol())) {
+            // Running from the build directory, the library can be loaded in place
+            try {
+                library = new File(resource.toURI()).getAbsolutePath();
+            }
+            catch (URISyntaxException e) {
+                LOGGER.warn("Can't load native library from <{}>", resource, e);
+            }
+        }
+        else {
+            final File directory = new File(
+                    System.getProperty("rsm_01.library.cacheDir", System.getProperty("java.io.tmpdir") + File.separator + "rsm_01-" + System.getProperty("user.name"))
+            );
+            try {
+                library = extract(resource, fileName, directory).getAbsolutePath();
+            }
+            catch (IOException e) {
+                LOGGER.warn("Can't extract native library <{}> into <{}>", resource, directory, e);
+            }
+        }
+        return library;
+    }
+
+    /**
+     * Copies the library into the directory unless an identical copy is already there. The file name holds a hash of
+     * the content, so libraries of different versions do not replace each other while in use. A file whose content does
+     * not match the hash is replaced.
+     *
+     * @param resource  Location of the bundled library.
+     * @param fileName  Platform specific file name of the library.
+     * @param directory Cache directory, created if it does not exist.
+     * @return the extracted library.
+     * @throws IOException if the library can't be read or written, or the directory is not private to the user.
+     */
+    static File extract(final URL resource, final String fileName, final File directory) throws IOException {
+        final byte[] content;
+        try (InputStream in = resource.openStream()) {
+            content = readAll(in);
+        }
+        final String hash = sha256(content);
+        final File target = new File(directory, hash + "-" + fileName);
+        privateDirectory(directory.toPath());
+        if (!isIntact(target, hash)) {
+            write(content, target, fileName, directory);
+        }
+        return target;
+    }
+
+    /**
+     * @param target Previously extracted library.
+     * @param hash   Expected hash of the content.
+     * @return true if the library exists and its content matches the hash.
+     * @throws IOException if the library can't be read.
+     */
+    private static boolean isIntact(final File target, final String hash) throws IOException {
+        boolean intact = false;
+        if (Files.isRegularFile(target.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            final byte[] existing;
+            try (InputStream in = Files.newInputStream(target.toPath())) {
+                existing = readAll(in);
+            }
+            intact = hash.equals(sha256(existing));
+            if (!intact) {
+                LOGGER.warn("Native library <{}> does not match the hash in its name, replacing it", target);
+            }
+        }
+        return intact;
+    }
+
+    private static void write(final byte[] content, final File target, final String fileName, final File directory)
+            throws IOException {
+        // Written under a temporary name and moved into place, so concurrently starting processes never load a
+        // partially written library
+        final Path temporary = Files.createTempFile(directory.toPath(), fileName, ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                out.write(content);
+            }
+            try {
+                Files.move(temporary, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Creates the directory accessible only to the current user, or checks that an existing directory is owned by the
+     * current user and not writable by others, so that other users can't place a library into it.
+     *
+     * @param directory Cache directory.
+     * @throws IOException if the directory can't be created or is not private to the current user.
+     */
+    private static void privateDirectory(final Path directory) throws IOException {
+        final boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            if (posix) {
+                Files
+                        .createDirectories(
+                                directory,
+                                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))
+                        );
+            }
+            else {
+                Files.createDirectories(directory);
+            }
+        }
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Native library cache <" + directory + "> is not a directory");
+        }
+        final UserPrincipal user = directory
+                .getFileSystem()
+                .getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        final UserPrincipal owner = Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS);
+        if (!user.equals(owner)) {
+            throw new IOException("Native library cache <" + directory + "> is owned by <" + owner.getName() + ">");
+        }
+        if (posix) {
+            final Set<PosixFilePermission> permissions = Files
+                    .getFileAttributeView(directory, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS)
+                    .readAttributes()
+                    .permissions();
+            if (
+                permissions.contains(PosixFilePermission.GROUP_WRITE)
+                        || permissions.contains(PosixFilePermission.OTHERS_WRITE)
+            ) {
+                throw new IOException(
+                        "Native library cache <" + directory + "> is writable by other users: "
+                                + PosixFilePermissions.toString(permissions)
+                );
+            }
+        }
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read = in.read(buffer);
+        while (read != -1) {
+            out.write(buffer, 0, read);
+            read = in.read(buffer);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256(final byte[] content) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        final StringBuilder hex = new StringBuilder();
+        final byte[] hash = digest.digest(content);
+        for (int i = 0; i < HASH_PREFIX_BYTES; i++) {
+            hex.append(String.format("%02x", hash[i]));
+        }
+        return hex.toString();
+    }
+
+    private static final class Holder {
+
+        private static final String LIBRARY = resolve();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounting of the liblognorm contexts and normalization results that are held in C memory. The amounts of bytes are
+ * estimates, liblognorm does not report the memory used by a context or a json object.
+ * <p>
+ * Contexts are JavaLognormImpl objects and CompiledRulebase objects. Results are NormalizedRecord objects, which keep
+ * their json object in C until they are closed. Resources that become unreachable without being closed are freed by a
+ * background thread, which logs where the resource was allocated and counts it in leaked().
+ */
+public final class NativeMemoryTracker {
+
+    /**
+     * Estimated size of a context handle without a rulebase: the handle, the ln_ctx structure and the callbacks.
+     */
+    public static final long CONTEXT_BYTES = 1024;
+    /**
+     * Estimated size of the parse tree per byte of rulebase source.
+     */
+    public static final long RULEBASE_BYTES_PER_BYTE = 16;
+    /**
+     * Estimated size of a json object without the message it was normalized from.
+     */
+    public static final long RESULT_BYTES = 256;
+    /**
+     * Estimated size of a json object per character of the message it was normalized from.
+     */
+    public static final long RESULT_BYTES_PER_CHAR = 8;
+
+    private static final NativeMemoryTracker GLOBAL = new NativeMemoryTracker();
+
+    private final LongAdder contexts;
+    private final LongAdder contextBytes;
+    private final LongAdder results;
+    private final LongAdder resultBytes;
+    private final LongAdder leaked;
+
+    private NativeMemoryTracker() {
+        this.contexts = new LongAdder();
+        this.contextBytes = new LongAdder();
+        this.results = new LongAdder();
+        this.resultBytes = new LongAdder();
+        this.leaked = new LongAdder();
+    }
+
+    /**
+     * @return tracker of every native resource allocated by this library.
+     */
+    public static NativeMemoryTracker global() {
+        return GLOBAL;
+    }
+
+    void allocated(final boolean context, final long bytes) {
+        if (context) {
+            contexts.increment();
+            contextBytes.add(bytes);
+        }
+        else {
+            results.increment();
+            resultBytes.add(bytes);
+        }
+    }
+
+    void released(final boolean context, final long bytes) {
+        if (context) {
+            contexts.decrement();
+            contextBytes.add(-bytes);
+        }
+        else {
+            results.decrement();
+            resultBytes.add(-bytes);
+        }
+    }
+
+    void leaked() {
+        leaked.increment();
+    }
+
+    /**
+     * @return amount of contexts that have not been closed.
+     */
+    public long contexts() {
+        return contexts.sum();
+    }
+
+    /**
+     * @return estimated bytes held by contexts that have not been closed.
+     */
+    public long contextBytes() {
+        return contextBytes.sum();
+    }
+
+    /**
+     * @return amount of NormalizedRecord objects that have not been closed.
+     */
+    public long results() {
+        return results.sum();
+    }
+
+    /**
+     * @return estimated bytes held by NormalizedRecord objects that have not been closed.
+     */
+    public long resultBytes() {
+        return resultBytes.sum();
+    }
+
+    /**
+     * @return estimated bytes held by every native resource that has not been closed.
+     */
+    public long outstandingBytes() {
+        return contextBytes.sum() + resultBytes.sum();
+    }
+
+    /**
+     * @return amount of resources that became unreachable without being closed and were freed in the background.
+     */
+    public long leakedResources() {
+        return leaked.sum();
+    }
+
+    /**
+     * Estimated size of a context that has the given rulebase loaded.
+     *
+     * @param rulebaseBytes Size of the rulebase source in bytes.
+     * @return estimated bytes.
+     */
+    static long contextBytes(final long rulebaseBytes) {
+        return CONTEXT_BYTES + RULEBASE_BYTES_PER_BYTE * rulebaseBytes;
+    }
+
+    /**
+     * Estimated size of the json object normalized from the given message.
+     *
+     * @param text Message that was normalized.
+     * @return estimated bytes.
+     */
+    static long resultBytes(final String text) {
+        return RESULT_BYTES + RESULT_BYTES_PER_CHAR * text.length();
+    }
+}
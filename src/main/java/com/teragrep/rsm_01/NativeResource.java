@@ -0,0 +1,160 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Native memory held on behalf of an owner object. The memory is freed when release() is called, or by a background
+ * thread after the owner has become unreachable without calling release(), in which case the allocation site of the
+ * owner is logged. The resource must not reference its owner, otherwise the owner never becomes unreachable.
+ * <p>
+ * Owners must access one of their own volatile fields after each native call that uses the memory, so that the owner
+ * stays reachable until the call has returned and the memory can't be freed in the middle of the call. Reads of final
+ * fields are not enough, as the JIT compiler may move them before the call.
+ */
+abstract class NativeResource extends PhantomReference<Object> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeResource.class);
+    // Allocation sites of contexts are always recorded, results only when requested as recording them is costly.
+    private static final boolean RESULT_SITES = Boolean.getBoolean("rsm_01.trackAllocationSites");
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    // Keeps the resources reachable until they are released, unreachable phantom references are never enqueued.
+    private static final Set<NativeResource> LIVE = ConcurrentHashMap.newKeySet();
+
+    static {
+        final Thread reaper = new Thread(NativeResource::reap, "rsm_01-native-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private final String name;
+    private final boolean context;
+    private final long bytes;
+    private final Throwable allocationSite;
+    private final AtomicBoolean released;
+
+    NativeResource(final Object owner, final boolean context, final long bytes) {
+        super(owner, QUEUE);
+        this.name = owner.getClass().getSimpleName();
+        this.context = context;
+        this.bytes = bytes;
+        this.allocationSite = context || RESULT_SITES ? new Throwable(name + " allocated here") : null;
+        this.released = new AtomicBoolean(false);
+        LIVE.add(this);
+        NativeMemoryTracker.global().allocated(context, bytes);
+    }
+
+    /**
+     * Frees the native memory. Called at most once.
+     *
+     * @return 0 on success, something else otherwise.
+     */
+    protected abstract int free();
+
+    /**
+     * Frees the native memory unless it has already been freed.
+     *
+     * @return return value of free(), 0 if the memory had already been freed.
+     */
+    final int release() {
+        int rv = 0;
+        if (released.compareAndSet(false, true)) {
+            LIVE.remove(this);
+            NativeMemoryTracker.global().released(context, bytes);
+            rv = free();
+        }
+        return rv;
+    }
+
+    /**
+     * @return true if release() has been called.
+     */
+    final boolean isReleased() {
+        return released.get();
+    }
+
+    private static void reap() {
+        while (true) {
+            final NativeResource resource;
+            try {
+                resource = (NativeResource) QUEUE.remove();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!resource.isReleased()) {
+                NativeMemoryTracker.global().leaked();
+                if (resource.allocationSite != null) {
+                    LOGGER
+                            .warn(
+                                    "{} was not closed, freeing its native memory of <{}> bytes", resource.name,
+                                    resource.bytes, resource.allocationSite
+                            );
+                }
+                else {
+                    LOGGER
+                            .warn(
+                                    "{} was not closed, freeing its native memory of <{}> bytes. Set system property rsm_01.trackAllocationSites=true to log where it was allocated",
+                                    resource.name, resource.bytes
+                            );
+                }
+                final int i = resource.release();
+                if (i != 0) {
+                    LOGGER.error("Freeing {} returned error code <{}>", resource.name, i);
+                }
+            }
+        }
+    }
+}
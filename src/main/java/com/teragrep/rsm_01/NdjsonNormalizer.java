@@ -0,0 +1,335 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Normalizes newline delimited log files and streams into newline delimited JSON. Each input line produces one output
+ * line: the normalization result for lines that were normalized successfully, and an error record of the form {"rv":
+ * -1000, "line": 1, "error": {...}} holding the liblognorm error information for lines that failed. Input is processed
+ * in chunks with reusable buffers, so memory use does not depend on the size of the input. Files are memory-mapped, and
+ * gzip-compressed input is detected and decompressed automatically.
+ */
+public final class NdjsonNormalizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NdjsonNormalizer.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int INITIAL_LINE_SIZE = 1024;
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int BYTE_MASK = 0xff;
+
+    private final LognormSource lognormSource;
+    private final int batchSize;
+
+    public NdjsonNormalizer(final LognormSource lognormSource) {
+        this(lognormSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public NdjsonNormalizer(final LognormSource lognormSource, final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+        }
+        this.lognormSource = lognormSource;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Normalize the lines of a file. Uncompressed files are memory-mapped.
+     *
+     * @param input  Path of the file to normalize, optionally gzip-compressed
+     * @param output OutputStream that receives the normalized lines
+     * @return statistics of the run
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public NormalizationReport normalize(final Path input, final OutputStream output) throws IOException {
+        return normalize(input, Channels.newChannel(output));
+    }
+
+    /**
+     * Normalize the lines of a file. Uncompressed files are memory-mapped.
+     *
+     * @param input  Path of the file to normalize, optionally gzip-compressed
+     * @param output WritableByteChannel that receives the normalized lines
+     * @return statistics of the run
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public NormalizationReport normalize(final Path input, final WritableByteChannel output) throws IOException {
+        final NormalizationReport report;
+        try (FileChannel fileChannel = FileChannel.open(input, StandardOpenOption.READ)) {
+            if (isGzip(fileChannel)) {
+                try (InputStream inputStream = Files.newInputStream(input)) {
+                    report = normalize(inputStream, output);
+                }
+            }
+            else {
+                report = normalizeMapped(fileChannel, output);
+            }
+        }
+        return report;
+    }
+
+    private NormalizationReport normalizeMapped(final FileChannel fileChannel, final WritableByteChannel output)
+            throws IOException {
+        try (Run run = new Run(output)) {
+            final long size = fileChannel.size();
+            for (long position = 0; position < size; position += MAP_SIZE) {
+                run
+                        .accept(
+                                fileChannel
+                                        .map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position))
+                        );
+            }
+            return run.finish();
+        }
+    }
+
+    /**
+     * Normalize the lines of a stream.
+     *
+     * @param input  InputStream to normalize, optionally gzip-compressed
+     * @param output OutputStream that receives the normalized lines
+     * @return statistics of the run
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public NormalizationReport normalize(final InputStream input, final OutputStream output) throws IOException {
+        return normalize(input, Channels.newChannel(output));
+    }
+
+    /**
+     * Normalize the lines of a stream.
+     *
+     * @param input  InputStream to normalize, optionally gzip-compressed
+     * @param output WritableByteChannel that receives the normalized lines
+     * @return statistics of the run
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public NormalizationReport normalize(final InputStream input, final WritableByteChannel output) throws IOException {
+        final BufferedInputStream bufferedInput = new BufferedInputStream(input);
+        bufferedInput.mark(2);
+        final boolean gzip = bufferedInput.read() == GZIP_MAGIC_1 && bufferedInput.read() == GZIP_MAGIC_2;
+        bufferedInput.reset();
+        final InputStream source;
+        if (gzip) {
+            source = new GZIPInputStream(bufferedInput, CHUNK_SIZE);
+        }
+        else {
+            source = bufferedInput;
+        }
+        try (Run run = new Run(output)) {
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            int read = source.read(chunk);
+            while (read != -1) {
+                run.accept(ByteBuffer.wrap(chunk, 0, read));
+                read = source.read(chunk);
+            }
+            return run.finish();
+        }
+    }
+
+    private boolean isGzip(final FileChannel fileChannel) throws IOException {
+        final ByteBuffer magic = ByteBuffer.allocate(2);
+        int read = fileChannel.read(magic, 0);
+        while (read > 0 && magic.hasRemaining()) {
+            read = fileChannel.read(magic, magic.position());
+        }
+        return magic.position() == 2 && (magic.get(0) & BYTE_MASK) == GZIP_MAGIC_1
+                && (magic.get(1) & BYTE_MASK) == GZIP_MAGIC_2;
+    }
+
+    /**
+     * State of a single normalization run: the context, the pending line and the reusable batch and output buffers.
+     */
+    private final class Run implements AutoCloseable {
+
+        private final WritableByteChannel output;
+        private final JavaLognormImpl javaLognormImpl;
+        private final String[] batch;
+        private final String[] results;
+        private final ByteBuffer outputBuffer;
+        private final long startNanos;
+        private byte[] line;
+        private int lineLength;
+        private int batchLength;
+        private long lines;
+        private long failedLines;
+        private long bytes;
+
+        private Run(final WritableByteChannel output) {
+            this.output = output;
+            this.javaLognormImpl = lognormSource.lognorm();
+            this.batch = new String[batchSize];
+            this.results = new String[batchSize];
+            this.outputBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+            this.startNanos = System.nanoTime();
+            this.line = new byte[INITIAL_LINE_SIZE];
+            this.lineLength = 0;
+            this.batchLength = 0;
+            this.lines = 0;
+            this.failedLines = 0;
+            this.bytes = 0;
+        }
+
+        private void accept(final ByteBuffer chunk) throws IOException {
+            bytes += chunk.remaining();
+            while (chunk.hasRemaining()) {
+                final byte b = chunk.get();
+                if (b == '\n') {
+                    endLine();
+                }
+                else {
+                    if (lineLength == line.length) {
+                        final byte[] grown = new byte[line.length * 2];
+                        System.arraycopy(line, 0, grown, 0, lineLength);
+                        line = grown;
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+
+        private void endLine() throws IOException {
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            batch[batchLength++] = new String(line, 0, length, StandardCharsets.UTF_8);
+            lineLength = 0;
+            if (batchLength == batch.length) {
+                flushBatch();
+            }
+        }
+
+        private void flushBatch() throws IOException {
+            if (batchLength == 0) {
+                return;
+            }
+            final String[] texts;
+            if (batchLength == batch.length) {
+                texts = batch;
+            }
+            else {
+                texts = new String[batchLength];
+                System.arraycopy(batch, 0, texts, 0, batchLength);
+            }
+            final int[] rvs = javaLognormImpl.normalizeBatch(texts, results);
+            for (int i = 0; i < batchLength; i++) {
+                lines++;
+                if (rvs[i] == 0) {
+                    write(results[i]);
+                }
+                else {
+                    failedLines++;
+                    write("{ \"rv\": " + rvs[i] + ", \"line\": " + lines + ", \"error\": " + results[i] + " }");
+                }
+                write("\n");
+            }
+            batchLength = 0;
+        }
+
+        private void write(final String string) throws IOException {
+            final byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            int offset = 0;
+            while (offset < encoded.length) {
+                if (!outputBuffer.hasRemaining()) {
+                    flushOutput();
+                }
+                final int length = Math.min(outputBuffer.remaining(), encoded.length - offset);
+                outputBuffer.put(encoded, offset, length);
+                offset += length;
+            }
+        }
+
+        private void flushOutput() throws IOException {
+            outputBuffer.flip();
+            while (outputBuffer.hasRemaining()) {
+                output.write(outputBuffer);
+            }
+            outputBuffer.clear();
+        }
+
+        private NormalizationReport finish() throws IOException {
+            if (lineLength > 0) {
+                // last line without a newline
+                endLine();
+            }
+            flushBatch();
+            flushOutput();
+            final NormalizationReport report = new NormalizationReport(
+                    lines,
+                    failedLines,
+                    bytes,
+                    System.nanoTime() - startNanos
+            );
+            LOGGER.info("Normalization finished: {}", report);
+            return report;
+        }
+
+        @Override
+        public void close() {
+            javaLognormImpl.close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the time a message can hold a context. Messages longer than the maximum length are truncated or rejected in
+ * Java before they are passed to C, by every context of the LognormFactory the guard is given to. The deadline is
+ * enforced by GuardedJavaLognorm, which runs the contexts on worker threads and replaces a context that overruns it.
+ * The guard counts the truncated, rejected and timed out messages of all the contexts that share it.
+ */
+public final class NormalizationGuard {
+
+    /**
+     * Return code of a message rejected for exceeding the maximum length. Outside of the range of liblognorm return
+     * codes.
+     */
+    public static final int TOO_LONG = -2001;
+    /**
+     * Return code of a message whose normalization exceeded the deadline. Outside of the range of liblognorm return
+     * codes.
+     */
+    public static final int TIMED_OUT = -2002;
+
+    // Continuation bytes of UTF-8 multi-byte sequences have the high bits 10.
+    private static final int UTF8_CONTINUATION_MASK = 0xC0;
+    private static final int UTF8_CONTINUATION = 0x80;
+
+    private static final NormalizationGuard UNBOUNDED = new NormalizationGuard(
+            Integer.MAX_VALUE,
+            OversizePolicy.TRUNCATE,
+            0L
+    );
+
+    private final int maxLength;
+    private final OversizePolicy policy;
+    private final long deadlineMillis;
+    private final LongAdder truncated;
+    private final LongAdder rejected;
+    private final LongAdder timedOut;
+
+    /**
+     * @param maxLength      Maximum length of a message, in characters for Strings and in bytes for ByteBuffers.
+     * @param policy         What to do with messages longer than maxLength.
+     * @param deadlineMillis Time GuardedJavaLognorm waits for a normalization call, 0 for no deadline.
+     */
+    public NormalizationGuard(final int maxLength, final OversizePolicy policy, final long deadlineMillis) {
+        if (maxLength < 1 || deadlineMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum length must be positive and deadline non-negative, got <" + maxLength + "> and <"
+                            + deadlineMillis + ">"
+            );
+        }
+        this.maxLength = maxLength;
+        this.policy = policy;
+        this.deadlineMillis = deadlineMillis;
+        this.truncated = new LongAdder();
+        this.rejected = new LongAdder();
+        this.timedOut = new LongAdder();
+    }
+
+    /**
+     * @return shared NormalizationGuard that does not limit messages or calls.
+     */
+    public static NormalizationGuard unbounded() {
+        return UNBOUNDED;
+    }
+
+    public int maxLength() {
+        return maxLength;
+    }
+
+    public OversizePolicy policy() {
+        return policy;
+    }
+
+    public long deadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * @return amount of messages that were truncated to the maximum length.
+     */
+    public long truncatedMessages() {
+        return truncated.sum();
+    }
+
+    /**
+     * @return amount of messages that were rejected for exceeding the maximum length.
+     */
+    public long rejectedMessages() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return amount of normalization calls that exceeded the deadline.
+     */
+    public long timedOutMessages() {
+        return timedOut.sum();
+    }
+
+    /**
+     * @return true if messages can be longer than the maximum length.
+     */
+    boolean isLimiting() {
+        return maxLength < Integer.MAX_VALUE;
+    }
+
+    long deadlineNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    /**
+     * Applies the length limit to a message and counts it if it was truncated or rejected.
+     *
+     * @param length Length of the message.
+     * @return length of the message to normalize, or -1 if the message is rejected.
+     */
+    int allowedLength(final int length) {
+        final int allowed;
+        if (length <= maxLength) {
+            allowed = length;
+        }
+        else if (policy == OversizePolicy.REJECT) {
+            rejected.increment();
+            allowed = -1;
+        }
+        else {
+            truncated.increment();
+            allowed = maxLength;
+        }
+        return allowed;
+    }
+
+    /**
+     * Applies the length limit to a UTF-8 encoded message between the position and the limit of a buffer, see
+     * allowedLength(int). A truncated message is cut at the start of a character, so that a multi-byte sequence is not
+     * split.
+     *
+     * @param in Buffer holding the message.
+     * @return length of the message to normalize in bytes, or -1 if the message is rejected.
+     */
+    int allowedLength(final ByteBuffer in) {
+        int length = allowedLength(in.remaining());
+        if (length >= 0 && length < in.remaining()) {
+            while (length > 0 && (in.get(in.position() + length) & UTF8_CONTINUATION_MASK) == UTF8_CONTINUATION) {
+                length--;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Applies the length limit to a message, see allowedLength().
+     *
+     * @param text The message.
+     * @return the message, its beginning if it was truncated, or null if it is rejected.
+     */
+    String limit(final String text) {
+        int length = allowedLength(text.length());
+        final String limited;
+        if (length < 0) {
+            limited = null;
+        }
+        else if (length == text.length()) {
+            limited = text;
+        }
+        else {
+            // Surrogate pairs are not split
+            if (Character.isHighSurrogate(text.charAt(length - 1))) {
+                length--;
+            }
+            limited = text.substring(0, length);
+        }
+        return limited;
+    }
+
+    /**
+     * @param length Length of a rejected message.
+     * @return error information of a rejected message, in the form liblognorm uses for generic errors.
+     */
+    String rejectedResult(final int length) {
+        return "{ \"Error\": \"Message of length " + length + " exceeds the maximum length of " + maxLength + "\" }";
+    }
+
+    /**
+     * @return error information of a call that exceeded the deadline.
+     */
+    String timedOutResult() {
+        return "{ \"Error\": \"Normalization exceeded the deadline of " + deadlineMillis + " ms\" }";
+    }
+
+    void timeout(final int messages) {
+        timedOut.add(messages);
+    }
+}
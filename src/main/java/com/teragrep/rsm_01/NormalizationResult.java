@@ -0,0 +1,109 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+/**
+ * Result of a normalization that does not throw when the message fails normalization. Failed results carry the
+ * liblognorm return code and the part of the message that liblognorm could not parse.
+ */
+public final class NormalizationResult {
+
+    private final int returnCode;
+    private final String result;
+    private final String unparsedData;
+    private final int unparsedPosition;
+
+    public NormalizationResult(final String result) {
+        this(0, result, "", -1);
+    }
+
+    public NormalizationResult(
+            final int returnCode,
+            final String result,
+            final String unparsedData,
+            final int unparsedPosition
+    ) {
+        this.returnCode = returnCode;
+        this.result = result;
+        this.unparsedData = unparsedData;
+        this.unparsedPosition = unparsedPosition;
+    }
+
+    /**
+     * @return true if the message was normalized successfully.
+     */
+    public boolean isSuccess() {
+        return returnCode == 0;
+    }
+
+    /**
+     * @return liblognorm return code, 0 for success.
+     */
+    public int returnCode() {
+        return returnCode;
+    }
+
+    /**
+     * @return normalized message as a JSON string object, or the liblognorm error information if normalization failed.
+     */
+    public String result() {
+        return result;
+    }
+
+    /**
+     * @return the trailing part of the message that could not be parsed, empty if normalization succeeded.
+     */
+    public String unparsedData() {
+        return unparsedData;
+    }
+
+    /**
+     * @return character position in the message where parsing stopped, -1 if normalization succeeded.
+     */
+    public int unparsedPosition() {
+        return unparsedPosition;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Native input and output buffers of a context for normalization that does not allocate on the Java heap. Messages are
+ * encoded to UTF-8 directly into the input memory, and C writes the serialized result into the output memory. Both grow
+ * when a message or a result does not fit and are reused otherwise. The native functions are bound with JNA direct
+ * mapping, because the interface proxy allocates the argument array and boxes the arguments on every call. Not
+ * thread-safe, like the context that owns it.
+ */
+final class NormalizeBuffers {
+
+    private static final int INITIAL_CAPACITY = 4096;
+    // A char takes at most three bytes in UTF-8, a surrogate pair takes four bytes for two chars.
+    private static final int MAX_CHAR_BYTES = 3;
+    private static final int MAX_ONE_BYTE = 0x7F;
+    private static final int MAX_TWO_BYTES = 0x7FF;
+    // Lead bytes of two, three and four byte sequences, and the marker and payload bits of the continuation bytes.
+    private static final int TWO_BYTE_LEAD = 0xC0;
+    private static final int THREE_BYTE_LEAD = 0xE0;
+    private static final int FOUR_BYTE_LEAD = 0xF0;
+    private static final int CONTINUATION = 0x80;
+    private static final int CONTINUATION_MASK = 0x3F;
+    private static final int CONTINUATION_BITS = 6;
+    private static final int TWO_CONTINUATIONS_BITS = 12;
+    private static final int THREE_CONTINUATIONS_BITS = 18;
+
+    static {
+        Native.register(NormalizeBuffers.class, NativeLibraryLoader.library());
+    }
+
+    private final Memory outLength;
+    private final Memory kept;
+    private Memory input;
+    private ByteBuffer inputBytes;
+    private Memory output;
+    private ByteBuffer outputBytes;
+
+    NormalizeBuffers() {
+        this.outLength = new Memory(Integer.BYTES);
+        this.kept = new Memory(Native.POINTER_SIZE);
+        this.input = new Memory(INITIAL_CAPACITY);
+        this.inputBytes = input.getByteBuffer(0, input.size());
+        this.output = new Memory(INITIAL_CAPACITY);
+        this.outputBytes = output.getByteBuffer(0, output.size());
+    }
+
+    private static native int normalizeBufferKeep(
+            Pointer ctx,
+            Pointer in,
+            int inLength,
+            Pointer out,
+            int outCapacity,
+            Pointer length,
+            Pointer kept
+    );
+
+    private static native int serializeResult(Pointer ctx, Pointer jref, Pointer out, int outCapacity);
+
+    private static native void destroyResult(Pointer jref);
+
+    /**
+     * Normalizes the beginning of the message into the output memory. If the result does not fit, the output memory
+     * grows and the result is serialized again, without normalizing the message again.
+     *
+     * @param ctx   Pointer to the liblognorm context.
+     * @param text  The message to normalize.
+     * @param chars Amount of characters from the beginning of the message to normalize.
+     * @return 0 on success, liblognorm error code otherwise.
+     */
+    int normalize(final Pointer ctx, final CharSequence text, final int chars) {
+        // A truncated message does not end in half of a surrogate pair
+        final boolean split = chars > 0 && chars < text.length() && Character.isHighSurrogate(text.charAt(chars - 1));
+        final int length = encode(text, split ? chars - 1 : chars);
+        final int rv = normalizeBufferKeep(ctx, input, length, output, (int) output.size(), outLength, kept);
+        final int required = outLength.getInt(0);
+        if (required > output.size()) {
+            // The result that did not fit was kept, serialize it into a larger buffer
+            final Pointer jref = kept.getPointer(0);
+            try {
+                output = new Memory(Math.max(required, output.size() * 2));
+                outputBytes = output.getByteBuffer(0, output.size());
+                serializeResult(ctx, jref, output, (int) output.size());
+            }
+            finally {
+                destroyResult(jref);
+            }
+        }
+        outputBytes.limit(required);
+        outputBytes.position(0);
+        return rv;
+    }
+
+    /**
+     * Empties the result, for messages that are not normalized.
+     */
+    void clear() {
+        outputBytes.limit(0);
+        outputBytes.position(0);
+    }
+
+    /**
+     * @return the result of the last normalization, between position 0 and the limit. Overwritten by the next call.
+     */
+    ByteBuffer result() {
+        return outputBytes;
+    }
+
+    /**
+     * Encodes the message to UTF-8 into the input memory, followed by a NUL byte as liblognorm reads the message of a
+     * failed normalization up to a NUL. Unpaired surrogates are replaced with '?' like String.getBytes() does.
+     *
+     * @param text  The message to encode.
+     * @param chars Amount of characters from the beginning of the message to encode.
+     * @return length of the encoded message in bytes.
+     */
+    private int encode(final CharSequence text, final int chars) {
+        // One more byte for the NUL
+        final long required = (long) chars * MAX_CHAR_BYTES + 1;
+        if (required > input.size()) {
+            input = new Memory(Math.max(required, input.size() * 2));
+            inputBytes = input.getByteBuffer(0, input.size());
+        }
+        int position = 0;
+        int i = 0;
+        while (i < chars) {
+            final char c = text.charAt(i);
+            if (c <= MAX_ONE_BYTE) {
+                inputBytes.put(position++, (byte) c);
+            }
+            else if (c <= MAX_TWO_BYTES) {
+                inputBytes.put(position++, (byte) (TWO_BYTE_LEAD | c >> CONTINUATION_BITS));
+                inputBytes.put(position++, (byte) (CONTINUATION | c & CONTINUATION_MASK));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+                inputBytes.put(position++, (byte) (FOUR_BYTE_LEAD | codePoint >> THREE_CONTINUATIONS_BITS));
+                inputBytes
+                        .put(position++, (byte) (CONTINUATION | codePoint >> TWO_CONTINUATIONS_BITS & CONTINUATION_MASK));
+                inputBytes.put(position++, (byte) (CONTINUATION | codePoint >> CONTINUATION_BITS & CONTINUATION_MASK));
+                inputBytes.put(position++, (byte) (CONTINUATION | codePoint & CONTINUATION_MASK));
+                i++;
+            }
+            else if (Character.isSurrogate(c)) {
+                inputBytes.put(position++, (byte) '?');
+            }
+            else {
+                inputBytes.put(position++, (byte) (THREE_BYTE_LEAD | c >> TWO_CONTINUATIONS_BITS));
+                inputBytes.put(position++, (byte) (CONTINUATION | c >> CONTINUATION_BITS & CONTINUATION_MASK));
+                inputBytes.put(position++, (byte) (CONTINUATION | c & CONTINUATION_MASK));
+            }
+            i++;
+        }
+        inputBytes.put(position, (byte) 0);
+        return position;
+    }
+}
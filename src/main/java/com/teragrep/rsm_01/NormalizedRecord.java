@@ -0,0 +1,239 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Pointer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Normalization result that stays in C as a json object. Fields are read directly from the json object, and the result
+ * is serialized to a json string only when toJson() is called. The json object is released from memory in C when the
+ * record is closed, after which the record can't be used anymore. Records are not thread-safe.
+ * <p>
+ * Fields are addressed by a path of field names, each name selecting a field of the previous object. For example the
+ * path ("metadata", "rule", "mockup") selects the mockup field of the rule object inside the metadata object. An empty
+ * path addresses the record itself.
+ */
+public final class NormalizedRecord implements AutoCloseable {
+
+    private static final int JSON_TYPE_OBJECT = 4;
+
+    private final Pointer jref;
+    private final NativeResource resource;
+    // Volatile so that the reads after native calls can't be eliminated, which keeps the record reachable.
+    private volatile boolean closed;
+
+    public NormalizedRecord(final Pointer jref) {
+        this(jref, NativeMemoryTracker.RESULT_BYTES);
+    }
+
+    NormalizedRecord(final Pointer jref, final long estimatedBytes) {
+        this.jref = jref;
+        this.resource = new ResultResource(this, jref, estimatedBytes);
+        this.closed = false;
+    }
+
+    /**
+     * Return true if the record contains the field.
+     *
+     * @param path Field names leading to the field
+     * @return true if the field exists, false if not
+     */
+    public boolean contains(final String ... path) {
+        final boolean contains = lookup(path) != null;
+        checkOpen();
+        return contains;
+    }
+
+    /**
+     * Return the value of a string field. Fields of other types are returned as json strings.
+     *
+     * @param path Field names leading to the field
+     * @return value of the field
+     * @throws NoSuchElementException if the field does not exist
+     */
+    public String getString(final String ... path) {
+        final String value = LibJavaLognorm.jnaInstance.recordString(field(path));
+        checkOpen();
+        return value;
+    }
+
+    /**
+     * Return the value of an integer field, or of a string field holding an integer.
+     *
+     * @param path Field names leading to the field
+     * @return value of the field
+     * @throws NoSuchElementException if the field does not exist
+     * @throws NumberFormatException  if the field does not hold an integer
+     */
+    public long getLong(final String ... path) {
+        final long[] value = new long[1];
+        final int i = LibJavaLognorm.jnaInstance.recordLong(field(path), value);
+        checkOpen();
+        if (i != 0) {
+            throw new NumberFormatException("Field <" + String.join(".", path) + "> does not hold an integer");
+        }
+        return value[0];
+    }
+
+    /**
+     * Return the value of a number field, or of a string field holding a number.
+     *
+     * @param path Field names leading to the field
+     * @return value of the field
+     * @throws NoSuchElementException if the field does not exist
+     * @throws NumberFormatException  if the field does not hold a number
+     */
+    public double getDouble(final String ... path) {
+        final double[] value = new double[1];
+        final int i = LibJavaLognorm.jnaInstance.recordDouble(field(path), value);
+        checkOpen();
+        if (i != 0) {
+            throw new NumberFormatException("Field <" + String.join(".", path) + "> does not hold a number");
+        }
+        return value[0];
+    }
+
+    /**
+     * Return true if the field is an object that has fields of its own.
+     *
+     * @param path Field names leading to the field
+     * @return true if the field is an object, false if not
+     * @throws NoSuchElementException if the field does not exist
+     */
+    public boolean isObject(final String ... path) {
+        final int type = LibJavaLognorm.jnaInstance.recordType(field(path));
+        checkOpen();
+        return type == JSON_TYPE_OBJECT;
+    }
+
+    /**
+     * Return the names of the fields of an object field. The names of the top level fields are returned for an empty
+     * path.
+     *
+     * @param path Field names leading to the object
+     * @return names of the fields, empty if the field is not an object
+     * @throws NoSuchElementException if the field does not exist
+     */
+    public List<String> fieldNames(final String ... path) {
+        final Pointer field = field(path);
+        final int count = LibJavaLognorm.jnaInstance.recordFieldCount(field);
+        final List<String> names = new ArrayList<>(count);
+        if (count > 0) {
+            final Pointer[] namePointers = new Pointer[count];
+            final int read = LibJavaLognorm.jnaInstance.recordFieldNames(field, namePointers, count);
+            for (int i = 0; i < read; i++) {
+                names.add(namePointers[i].getString(0));
+            }
+        }
+        checkOpen();
+        return names;
+    }
+
+    /**
+     * Serialize the record to a json string.
+     *
+     * @return normalized message as a JSON string object
+     */
+    public String toJson() {
+        checkOpen();
+        final String json = LibJavaLognorm.jnaInstance.readResult(jref);
+        checkOpen();
+        return json;
+    }
+
+    private Pointer field(final String ... path) {
+        final Pointer field = lookup(path);
+        if (field == null) {
+            throw new NoSuchElementException("Field <" + String.join(".", path) + "> does not exist");
+        }
+        return field;
+    }
+
+    private Pointer lookup(final String ... path) {
+        checkOpen();
+        return LibJavaLognorm.jnaInstance.recordField(jref, path, path.length);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("NormalizedRecord is closed");
+        }
+    }
+
+    /**
+     * Releases the json object of the record from memory in C.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            resource.release();
+        }
+    }
+
+    /**
+     * Json object of a NormalizedRecord, released when the record is closed or becomes unreachable.
+     */
+    private static final class ResultResource extends NativeResource {
+
+        private final Pointer jref;
+
+        private ResultResource(final Object owner, final Pointer jref, final long bytes) {
+            super(owner, false, bytes);
+            this.jref = jref;
+        }
+
+        @Override
+        protected int free() {
+            LibJavaLognorm.jnaInstance.destroyResult(jref);
+            return 0;
+        }
+    }
+}
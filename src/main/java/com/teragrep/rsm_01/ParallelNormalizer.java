@@ -0,0 +1,286 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Normalizes large amounts of messages in parallel. The input is split into chunks that are normalized by a fixed set
+ * of worker threads, each worker using a liblognorm context of its own created from the LognormSource. Using a
+ * CompiledRulebase as the LognormSource avoids loading the rulebase once per worker.
+ */
+public final class ParallelNormalizer implements AutoCloseable {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final int parallelism;
+    private final int chunkSize;
+    private final ExecutorService executorService;
+    private final WorkerContexts workerContexts;
+
+    public ParallelNormalizer(final LognormSource lognormSource) {
+        this(lognormSource, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelNormalizer(final LognormSource lognormSource, final int parallelism, final int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException(
+                    "Parallelism and chunk size must be at least 1, got " + parallelism + " and " + chunkSize
+            );
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.executorService = Executors
+                .newFixedThreadPool(parallelism, new NormalizerThreadFactory("rsm_01-normalizer"));
+        this.workerContexts = new WorkerContexts(lognormSource);
+    }
+
+    /**
+     * Normalize the messages in parallel. Results are written to the output array at the index of their message, so the
+     * input order is always preserved.
+     *
+     * @param texts The message strings to normalize
+     * @param out   Array that receives the normalized message, or the error information for failed messages, at the
+     *              same index as the input
+     * @return liblognorm return code of each message, 0 for success
+     */
+    public int[] normalizeBatch(final String[] texts, final String[] out) {
+        if (out.length < texts.length) {
+            throw new IllegalArgumentException(
+                    "Output array length " + out.length + " is smaller than the amount of messages " + texts.length
+            );
+        }
+        final int[] rvs = new int[texts.length];
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int start = 0; start < texts.length; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(start + chunkSize, texts.length);
+            futures.add(executorService.submit(() -> {
+                final String[] chunk = Arrays.copyOfRange(texts, from, to);
+                final String[] chunkOut = new String[chunk.length];
+                final int[] chunkRvs = workerContexts.get().normalizeBatch(chunk, chunkOut);
+                System.arraycopy(chunkOut, 0, out, from, chunk.length);
+                System.arraycopy(chunkRvs, 0, rvs, from, chunk.length);
+            }));
+        }
+        for (final Future<?> future : futures) {
+            await(future);
+        }
+        return rvs;
+    }
+
+    /**
+     * Normalize a stream of messages in parallel. The input stream is consumed lazily as the returned stream is
+     * consumed, with a bounded amount of chunks in progress at a time.
+     *
+     * @param texts   The message strings to normalize
+     * @param ordered true to return the results in input order, false to return them as soon as their chunk is
+     *                normalized which gives more throughput
+     * @return stream of results, each holding the index of its message in the input
+     */
+    public Stream<BulkResult> normalize(final Stream<String> texts, final boolean ordered) {
+        final Iterator<BulkResult> iterator = new ResultIterator(texts.iterator(), ordered);
+        final int characteristics;
+        if (ordered) {
+            characteristics = Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+        else {
+            characteristics = Spliterator.NONNULL;
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+    }
+
+    private static <T> T await(final Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for normalization results", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Parallel normalization failed", e.getCause());
+        }
+    }
+
+    /**
+     * Stops the worker threads and closes their contexts.
+     *
+     * @throws IllegalArgumentException Throws if closing a context fails.
+     */
+    @Override
+    public void close() throws IllegalArgumentException {
+        workerContexts.close(executorService);
+    }
+
+    private final class ResultIterator implements Iterator<BulkResult> {
+
+        private final Iterator<String> input;
+        private final boolean ordered;
+        private final Deque<Future<BulkResult[]>> pending;
+        private final CompletionService<BulkResult[]> completionService;
+        private int inFlight;
+        private long nextIndex;
+        private BulkResult[] current;
+        private int position;
+
+        private ResultIterator(final Iterator<String> input, final boolean ordered) {
+            this.input = input;
+            this.ordered = ordered;
+            this.pending = new ArrayDeque<>();
+            this.completionService = new ExecutorCompletionService<>(executorService);
+            this.inFlight = 0;
+            this.nextIndex = 0;
+            this.current = new BulkResult[0];
+            this.position = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = position < current.length;
+            if (!hasNext) {
+                submitChunks();
+                if (inFlight > 0) {
+                    current = await(nextCompleted());
+                    position = 0;
+                    submitChunks();
+                    hasNext = true;
+                }
+            }
+            return hasNext;
+        }
+
+        private Future<BulkResult[]> nextCompleted() {
+            final Future<BulkResult[]> future;
+            if (ordered) {
+                future = pending.poll();
+            }
+            else {
+                future = takeCompleted();
+            }
+            inFlight--;
+            return future;
+        }
+
+        @Override
+        public BulkResult next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current[position++];
+        }
+
+        private Future<BulkResult[]> takeCompleted() {
+            try {
+                return completionService.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for normalization results", e);
+            }
+        }
+
+        /**
+         * Keeps two chunks per worker in progress so that the workers don't wait for the consumer.
+         */
+        private void submitChunks() {
+            while (inFlight < 2 * parallelism && input.hasNext()) {
+                final List<String> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && input.hasNext()) {
+                    chunk.add(input.next());
+                }
+                final Callable<BulkResult[]> task = new ChunkTask(nextIndex, chunk.toArray(new String[0]));
+                nextIndex += chunk.size();
+                if (ordered) {
+                    pending.add(executorService.submit(task));
+                }
+                else {
+                    completionService.submit(task);
+                }
+                inFlight++;
+            }
+        }
+    }
+
+    private final class ChunkTask implements Callable<BulkResult[]> {
+
+        private final long firstIndex;
+        private final String[] texts;
+
+        private ChunkTask(final long firstIndex, final String[] texts) {
+            this.firstIndex = firstIndex;
+            this.texts = texts;
+        }
+
+        @Override
+        public BulkResult[] call() {
+            final String[] out = new String[texts.length];
+            final int[] rvs = workerContexts.get().normalizeBatch(texts, out);
+            final BulkResult[] results = new BulkResult[texts.length];
+            for (int i = 0; i < texts.length; i++) {
+                results[i] = new BulkResult(firstIndex + i, rvs[i], out[i]);
+            }
+            return results;
+        }
+    }
+}
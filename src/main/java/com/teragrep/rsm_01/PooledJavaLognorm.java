@@ -0,0 +1,393 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Thread-safe JavaLognorm that owns a bounded pool of liblognorm contexts created from a LognormSource, such as a
+ * LognormFactory or a CompiledRulebase. Each call borrows a context that is not in use by any other thread, so a single
+ * instance can be shared by all worker threads. Contexts are created lazily up to the configured pool size, and
+ * contexts that have been idle longer than the idle timeout are closed by a background sweep once per idle timeout, so
+ * that borrowing and returning a context stay cheap and the contexts of a pool without traffic are closed too. The
+ * sweep does not keep the pool reachable, a pool that is never closed is swept until it is garbage collected.
+ */
+public final class PooledJavaLognorm implements JavaLognorm, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledJavaLognorm.class);
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000L;
+    private static final int DEFAULT_WARMUP_ROUNDS = 1000;
+
+    // Messages in common syslog shapes, so that warmup exercises both the success and failure paths of most rulebases
+    private static final List<String> WARMUP_MESSAGES = Collections
+            .unmodifiableList(
+                    Arrays
+                            .asList(
+                                    "", "warmup",
+                                    "<34>1 2024-01-01T00:00:00.000Z host.example.com app 1234 ID47 - warmup message 42",
+                                    "Jan  1 00:00:00 host app[1234]: warmup message key=value 127.0.0.1 3.14"
+                            )
+            );
+
+    private final LognormSource lognormSource;
+    private final int size;
+    private final long idleTimeoutNanos;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledContext> idle;
+    private final AtomicBoolean closed;
+    private final ScheduledFuture<?> sweep;
+
+    public PooledJavaLognorm(final LognormSource lognormSource) {
+        this(lognormSource, Runtime.getRuntime().availableProcessors(), DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public PooledJavaLognorm(final LognormSource lognormSource, final int size, final long idleTimeoutMillis) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, got " + size);
+        }
+        this.lognormSource = lognormSource;
+        this.size = size;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.permits = new Semaphore(size);
+        this.idle = new LinkedBlockingDeque<>();
+        this.closed = new AtomicBoolean(false);
+        final long sweepNanos = Math.max(idleTimeoutNanos, TimeUnit.MILLISECONDS.toNanos(1));
+        final Sweep task = new Sweep(this);
+        this.sweep = Sweeper.EXECUTOR.scheduleWithFixedDelay(task, sweepNanos, sweepNanos, TimeUnit.NANOSECONDS);
+        task.schedule(sweep);
+    }
+
+    @Override
+    public String normalize(final String text) {
+        final PooledContext context = borrow();
+        try {
+            return context.javaLognormImpl().normalize(text);
+        }
+        finally {
+            release(context);
+        }
+    }
+
+    /**
+     * Normalize a message with a pooled context without throwing when the message fails normalization.
+     *
+     * @param text The message string to normalize
+     * @return NormalizationResult holding the normalized message, or the return code and unparsed data on failure
+     * @see JavaLognormImpl#tryNormalize(String)
+     */
+    public NormalizationResult tryNormalize(final String text) {
+        final PooledContext context = borrow();
+        try {
+            return context.javaLognormImpl().tryNormalize(text);
+        }
+        finally {
+            release(context);
+        }
+    }
+
+    @Override
+    public List<String> normalizeBatch(final List<String> texts) {
+        final PooledContext context = borrow();
+        try {
+            return context.javaLognormImpl().normalizeBatch(texts);
+        }
+        finally {
+            release(context);
+        }
+    }
+
+    @Override
+    public int[] normalizeBatch(final String[] texts, final String[] out) {
+        final PooledContext context = borrow();
+        try {
+            return context.javaLognormImpl().normalizeBatch(texts, out);
+        }
+        finally {
+            release(context);
+        }
+    }
+
+    /**
+     * Prepare the pool for traffic with built-in synthetic messages.
+     *
+     * @see #warmup(List, int)
+     */
+    public void warmup() {
+        warmup(WARMUP_MESSAGES, DEFAULT_WARMUP_ROUNDS);
+    }
+
+    /**
+     * Prepare the pool for traffic by creating all of its contexts and running the messages through each of them. This
+     * loads the native library and the rulebase, and lets the JIT compile the normalization path, before the first real
+     * message arrives instead of during it. The messages are normalized one by one and as a batch, and failures are
+     * ignored. Warmup holds every context of the pool until it completes, so it should be called before the pool is
+     * shared with worker threads.
+     *
+     * @param messages Messages to normalize, preferably samples of the expected traffic.
+     * @param rounds   How many times each context normalizes the messages.
+     */
+    public void warmup(final List<String> messages, final int rounds) {
+        final long start = System.nanoTime();
+        final String[] texts = messages.toArray(new String[0]);
+        final String[] out = new String[texts.length];
+        final List<PooledContext> contexts = new ArrayList<>(size);
+        try {
+            while (contexts.size() < size) {
+                contexts.add(borrow());
+            }
+            for (PooledContext context : contexts) {
+                warmup(context.javaLognormImpl(), texts, out, rounds);
+            }
+        }
+        finally {
+            for (PooledContext context : contexts) {
+                release(context);
+            }
+        }
+        LOGGER
+                .info(
+                        "Warmed up <{}> liblognorm contexts with <{}> rounds of <{}> messages in <{}> ms", size, rounds,
+                        texts.length, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                );
+    }
+
+    private void warmup(
+            final JavaLognormImpl javaLognormImpl,
+            final String[] texts,
+            final String[] out,
+            final int rounds
+    ) {
+        for (int round = 0; round < rounds; round++) {
+            for (String text : texts) {
+                javaLognormImpl.tryNormalize(text);
+            }
+            if (texts.length > 0) {
+                javaLognormImpl.normalizeBatch(texts, out);
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of created contexts that are currently not in use.
+     *
+     * @return amount of idle contexts in the pool.
+     */
+    public int idleContexts() {
+        return idle.size();
+    }
+
+    /**
+     * Takes an idle context from the pool, or creates a new one if there are none. Blocks while all the contexts are in
+     * use.
+     *
+     * @return context reserved for the calling thread.
+     */
+    private PooledContext borrow() {
+        if (closed.get()) {
+            throw new IllegalStateException("PooledJavaLognorm is closed");
+        }
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a liblognorm context", e);
+        }
+        // Most recently used contexts are reused first, leaving the least recently used ones to be evicted.
+        PooledContext context = idle.pollFirst();
+        if (context == null) {
+            try {
+                context = new PooledContext(lognormSource.lognorm());
+            }
+            finally {
+                if (context == null) {
+                    permits.release();
+                }
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Returns a borrowed context to the pool, closing it instead if the pool has been closed.
+     *
+     * @param context context that was borrowed with borrow().
+     */
+    private void release(final PooledContext context) {
+        if (closed.get()) {
+            context.close();
+        }
+        else {
+            context.touch();
+            idle.offerFirst(context);
+            // close() may have drained the pool between the check and the offer.
+            if (closed.get()) {
+                closeIdle();
+            }
+        }
+        permits.release();
+    }
+
+    /**
+     * Closes the least recently used contexts that have been idle longer than the idle timeout. A context that fails to
+     * close is logged, so that the failure does not cancel the sweep.
+     */
+    private void evictIdle() {
+        final long now = System.nanoTime();
+        PooledContext last = idle.peekLast();
+        while (last != null && now - last.lastUsedNanos() > idleTimeoutNanos) {
+            if (idle.removeLastOccurrence(last)) {
+                LOGGER.debug("Closing liblognorm context that was idle over <{}> ns", idleTimeoutNanos);
+                try {
+                    last.close();
+                }
+                catch (IllegalArgumentException e) {
+                    LOGGER.error("Closing idle liblognorm context failed", e);
+                }
+            }
+            last = idle.peekLast();
+        }
+    }
+
+    private void closeIdle() {
+        PooledContext context = idle.pollFirst();
+        while (context != null) {
+            context.close();
+            context = idle.pollFirst();
+        }
+    }
+
+    /**
+     * Closes all the idle contexts of the pool. Contexts that are in use are closed when they are returned.
+     *
+     * @throws IllegalArgumentException Throws if closing a context fails.
+     */
+    @Override
+    public void close() throws IllegalArgumentException {
+        closed.set(true);
+        sweep.cancel(false);
+        closeIdle();
+    }
+
+    /**
+     * Daemon thread shared by all the pools for evicting idle contexts, created when the first pool is created.
+     */
+    private static final class Sweeper {
+
+        private static final ScheduledExecutorService EXECUTOR = Executors
+                .newSingleThreadScheduledExecutor(new NormalizerThreadFactory("rsm_01-pool-sweeper"));
+    }
+
+    /**
+     * Periodic eviction of a pool that references the pool weakly, and cancels itself once the pool has been garbage
+     * collected.
+     */
+    private static final class Sweep implements Runnable {
+
+        private final WeakReference<PooledJavaLognorm> pool;
+        private volatile ScheduledFuture<?> future;
+
+        private Sweep(final PooledJavaLognorm pool) {
+            this.pool = new WeakReference<>(pool);
+        }
+
+        private void schedule(final ScheduledFuture<?> scheduled) {
+            this.future = scheduled;
+        }
+
+        @Override
+        public void run() {
+            final PooledJavaLognorm pooledJavaLognorm = pool.get();
+            if (pooledJavaLognorm != null) {
+                pooledJavaLognorm.evictIdle();
+            }
+            else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static final class PooledContext {
+
+        private final JavaLognormImpl javaLognormImpl;
+        private long lastUsedNanos;
+
+        private PooledContext(final JavaLognormImpl javaLognormImpl) {
+            this.javaLognormImpl = javaLognormImpl;
+            this.lastUsedNanos = System.nanoTime();
+        }
+
+        private JavaLognormImpl javaLognormImpl() {
+            return javaLognormImpl;
+        }
+
+        private long lastUsedNanos() {
+            return lastUsedNanos;
+        }
+
+        private void touch() {
+            lastUsedNanos = System.nanoTime();
+        }
+
+        private void close() {
+            javaLognormImpl.close();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-safe JavaLognorm whose rulebase can be replaced while it is in use. A new rulebase is compiled on a background
+ * thread and swapped in atomically once it has loaded, so normalization continues with the old rulebase during the
+ * compilation. Calls that started before the swap finish with the old rulebase, whose contexts are closed when the last
+ * of those calls has returned. If the new rulebase fails to load, the old rulebase keeps serving.
+ */
+public final class ReloadableJavaLognorm implements JavaLognorm, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReloadableJavaLognorm.class);
+    private static final long IDLE_TIMEOUT_MILLIS = 60000L;
+
+    private final int poolSize;
+    private final AtomicReference<Generation> current;
+    private final AtomicLong generations;
+    private final ExecutorService compiler;
+    private volatile LognormFactory lognormFactory;
+
+    public ReloadableJavaLognorm(final LognormFactory lognormFactory) {
+        this(lognormFactory, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ReloadableJavaLognorm(final LognormFactory lognormFactory, final int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, got " + poolSize);
+        }
+        this.poolSize = poolSize;
+        this.current = new AtomicReference<>(new Generation(lognormFactory.compile(), poolSize));
+        this.generations = new AtomicLong(1);
+        this.compiler = Executors.newSingleThreadExecutor(new NormalizerThreadFactory("rsm_01-reload"));
+        this.lognormFactory = lognormFactory;
+    }
+
+    @Override
+    public String normalize(final String text) {
+        final Generation generation = acquire();
+        try {
+            return generation.pool.normalize(text);
+        }
+        finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Normalize a message without throwing when the message fails normalization.
+     *
+     * @param text The message string to normalize
+     * @return NormalizationResult holding the normalized message, or the return code and unparsed data on failure
+     * @see JavaLognormImpl#tryNormalize(String)
+     */
+    public NormalizationResult tryNormalize(final String text) {
+        final Generation generation = acquire();
+        try {
+            return generation.pool.tryNormalize(text);
+        }
+        finally {
+            generation.release();
+        }
+    }
+
+    @Override
+    public List<String> normalizeBatch(final List<String> texts) {
+        final Generation generation = acquire();
+        try {
+            return generation.pool.normalizeBatch(texts);
+        }
+        finally {
+            generation.release();
+        }
+    }
+
+    @Override
+    public int[] normalizeBatch(final String[] texts, final String[] out) {
+        final Generation generation = acquire();
+        try {
+            return generation.pool.normalizeBatch(texts, out);
+        }
+        finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Compile the given rulebase in the background with the options of the current factory and swap it in.
+     *
+     * @param samples The string with the actual rulebase.
+     * @return future that completes when the rulebase is in use, or exceptionally if it failed to load.
+     */
+    public CompletableFuture<Void> reload(final String samples) {
+        return reload(lognormFactory.withRulebase(samples));
+    }
+
+    /**
+     * Compile the given rulebase file in the background with the options of the current factory and swap it in.
+     *
+     * @param samplesFile The rulebase file.
+     * @return future that completes when the rulebase is in use, or exceptionally if it failed to load.
+     */
+    public CompletableFuture<Void> reload(final File samplesFile) {
+        return reload(lognormFactory.withRulebase(samplesFile));
+    }
+
+    /**
+     * Compile the rulebase of the given factory in the background and swap it in. Calls made after the returned future
+     * completes use the new rulebase.
+     *
+     * @param newFactory Factory of the new rulebase.
+     * @return future that completes when the rulebase is in use, or exceptionally if it failed to load.
+     */
+    public CompletableFuture<Void> reload(final LognormFactory newFactory) {
+        return CompletableFuture.runAsync(() -> swap(newFactory), compiler).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                LOGGER.error("Reloading the rulebase failed, keeping the current rulebase", throwable);
+            }
+        });
+    }
+
+    private void swap(final LognormFactory newFactory) {
+        final Generation generation = new Generation(newFactory.compile(), poolSize);
+        final Generation old = current.getAndUpdate(previous -> previous == null ? null : generation);
+        if (old == null) {
+            // Closed during the compilation
+            generation.release();
+            throw new IllegalStateException("ReloadableJavaLognorm is closed");
+        }
+        lognormFactory = newFactory;
+        generations.incrementAndGet();
+        old.release();
+    }
+
+    /**
+     * Returns the amount of rulebases that have been swapped in, including the initial rulebase.
+     *
+     * @return amount of rulebase generations.
+     */
+    public long generation() {
+        return generations.get();
+    }
+
+    /**
+     * Takes a reference to the current generation, so that it is not closed before the reference is released.
+     *
+     * @return current generation.
+     */
+    private Generation acquire() {
+        while (true) {
+            final Generation generation = current.get();
+            if (generation == null) {
+                throw new IllegalStateException("ReloadableJavaLognorm is closed");
+            }
+            if (generation.tryAcquire()) {
+                return generation;
+            }
+            // The generation was retired and released by its last user after this thread read it, the next read
+            // returns the generation that replaced it.
+        }
+    }
+
+    /**
+     * Stops accepting calls and closes the contexts of the current rulebase once the calls in progress have returned.
+     */
+    @Override
+    public void close() {
+        compiler.shutdown();
+        final Generation generation = current.getAndSet(null);
+        if (generation != null) {
+            generation.release();
+        }
+    }
+
+    /**
+     * Compiled rulebase and the pool of contexts using it. The generation holds one reference for being the current
+     * generation and one for each call in progress, and is closed when the last reference is released.
+     */
+    private static final class Generation {
+
+        private final CompiledRulebase compiledRulebase;
+        private final PooledJavaLognorm pool;
+        private final AtomicInteger references;
+
+        private Generation(final CompiledRulebase compiledRulebase, final int poolSize) {
+            this.compiledRulebase = compiledRulebase;
+            this.pool = new PooledJavaLognorm(compiledRulebase, poolSize, IDLE_TIMEOUT_MILLIS);
+            this.references = new AtomicInteger(1);
+        }
+
+        private boolean tryAcquire() {
+            boolean acquired = false;
+            int count = references.get();
+            while (!acquired && count > 0) {
+                acquired = references.compareAndSet(count, count + 1);
+                if (!acquired) {
+                    count = references.get();
+                }
+            }
+            return acquired;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                pool.close();
+                compiledRulebase.close();
+            }
+        }
+    }
+}
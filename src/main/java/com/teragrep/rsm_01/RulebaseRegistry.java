@@ -0,0 +1,436 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe registry of compiled rulebases for applications that normalize messages with many rulebases. Rulebases
+ * are identified by a hash of their content, or by the path and modification time of their file, so acquiring the same
+ * rulebase again shares the same compiled rulebase. A rulebase is compiled when it is first acquired, and contexts are
+ * created from a Lease that keeps it compiled until the Lease is closed. When the estimated native memory of the
+ * compiled rulebases exceeds the budget, the least recently used rulebases without open leases are evicted, and
+ * compiled again when they are acquired next. Contexts created from an evicted rulebase keep it loaded in C until they
+ * are closed, so it is counted against the budget until then. A rulebase is forgotten, along with its statistics, once
+ * it is evicted and none of its leases and contexts are open. Rulebases are compiled with the options, binding and
+ * other settings of the LognormFactory given to the registry.
+ */
+public final class RulebaseRegistry implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RulebaseRegistry.class);
+    // Times a rulebase file is compiled again when it is modified during its compilation.
+    private static final int FILE_ATTEMPTS = 3;
+    private static final int HEX_RADIX = 16;
+    private static final int HEX_DIGIT_BITS = 4;
+    private static final int HEX_DIGIT_MASK = 0xF;
+
+    private final LognormFactory lognormFactory;
+    private final long budgetBytes;
+    private final Map<String, Entry> entries;
+    private boolean closed;
+
+    /**
+     * @param lognormFactory Factory whose settings are used to compile the rulebases, its own rulebase is not used.
+     * @param budgetBytes    Estimated native memory the compiled rulebases may use, see NativeMemoryTracker.
+     */
+    public RulebaseRegistry(final LognormFactory lognormFactory, final long budgetBytes) {
+        this.lognormFactory = lognormFactory;
+        this.budgetBytes = budgetBytes;
+        this.entries = new LinkedHashMap<>();
+        this.closed = false;
+    }
+
+    /**
+     * Acquire the rulebase given as a string, compiling it if it is not compiled yet.
+     *
+     * @param rulebase The string with the actual rulebase.
+     * @return Lease that creates contexts of the rulebase, must be closed when no more contexts are needed.
+     */
+    public Lease acquire(final String rulebase) {
+        final String key = "sha256:" + sha256(rulebase);
+        return acquire(key, () -> lognormFactory.withRulebase(rulebase));
+    }
+
+    /**
+     * Acquire the rulebase given as a string under a key chosen by the caller, such as the name and version of the
+     * rulebase, compiling it if it is not compiled yet. Saves hashing the whole rulebase on every acquire, so the same
+     * key must always be given the same rulebase.
+     *
+     * @param key      Identity of the rulebase.
+     * @param rulebase The string with the actual rulebase.
+     * @return Lease that creates contexts of the rulebase, must be closed when no more contexts are needed.
+     */
+    public Lease acquire(final String key, final String rulebase) {
+        return acquire("key:" + key, () -> lognormFactory.withRulebase(rulebase));
+    }
+
+    /**
+     * Acquire the rulebase file, compiling it if it is not compiled yet or the file has been modified since. Earlier
+     * versions of the file without open leases are evicted. The file is read when it is compiled, so if it is modified
+     * during the compilation, the compiled rulebase may not be the version of its key and the file is acquired again.
+     *
+     * @param rulebaseFile The rulebase file.
+     * @return Lease that creates contexts of the rulebase, must be closed when no more contexts are needed.
+     * @throws IllegalStateException if the file keeps being modified while it is compiled.
+     */
+    public Lease acquire(final File rulebaseFile) {
+        final File file = rulebaseFile.getAbsoluteFile();
+        final String prefix = "file:" + file.getPath() + "@";
+        Lease lease = null;
+        for (int attempt = 0; lease == null && attempt < FILE_ATTEMPTS; attempt++) {
+            final long lastModified = file.lastModified();
+            final String key = prefix + lastModified;
+            evictSuperseded(prefix, key);
+            lease = acquire(key, () -> lognormFactory.withRulebase(file));
+            if (file.lastModified() != lastModified) {
+                LOGGER.debug("Rulebase file <{}> was modified while it was acquired, acquiring it again", file);
+                lease.close();
+                lease = null;
+            }
+        }
+        if (lease == null) {
+            throw new IllegalStateException("Rulebase file " + file + " was modified every time it was compiled");
+        }
+        return lease;
+    }
+
+    private Lease acquire(final String key, final Supplier<LognormFactory> factory) {
+        final Entry entry;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("RulebaseRegistry is closed");
+            }
+            entry = entries.computeIfAbsent(key, k -> new Entry(k, factory));
+            entry.references++;
+            entry.lastUsedNanos = System.nanoTime();
+        }
+        // Compiled outside of the registry lock, so that compiling a large rulebase does not block other rulebases
+        CompiledRulebase compiledRulebase = null;
+        try {
+            compiledRulebase = entry.compiled();
+        }
+        finally {
+            if (compiledRulebase == null) {
+                release(entry);
+            }
+        }
+        evict();
+        return new Lease(entry, compiledRulebase);
+    }
+
+    private synchronized void release(final Entry entry) {
+        entry.references--;
+        entry.lastUsedNanos = System.nanoTime();
+    }
+
+    /**
+     * Closes the least recently used compiled rulebases without leases until the resident rulebases fit the budget.
+     * Rulebases without leases are not being compiled, so closing them under the registry lock does not wait for a
+     * compilation.
+     */
+    private synchronized void evict() {
+        long bytes = sweep();
+        while (bytes > budgetBytes) {
+            Entry coldest = null;
+            for (Entry entry : entries.values()) {
+                if (
+                    entry.references == 0 && entry.isResident()
+                            && (coldest == null || entry.lastUsedNanos < coldest.lastUsedNanos)
+                ) {
+                    coldest = entry;
+                }
+            }
+            if (coldest == null) {
+                LOGGER
+                        .warn(
+                                "Compiled rulebases use <{}> bytes over the budget of <{}> bytes, but all of them are in use",
+                                bytes, budgetBytes
+                        );
+                return;
+            }
+            LOGGER.debug("Evicting rulebase <{}> of <{}> bytes", coldest.key, coldest.estimatedBytes);
+            coldest.evict();
+            bytes = sweep();
+        }
+    }
+
+    /**
+     * Closes the compiled rulebases of earlier versions of a file that have no leases, as they are not acquired again.
+     *
+     * @param prefix Key of the file without its modification time.
+     * @param key    Key of the current version of the file.
+     */
+    private synchronized void evictSuperseded(final String prefix, final String key) {
+        for (Entry entry : entries.values()) {
+            if (entry.references == 0 && entry.key.startsWith(prefix) && !entry.key.equals(key)) {
+                LOGGER.debug("Evicting superseded rulebase <{}>", entry.key);
+                entry.evict();
+            }
+        }
+        sweep();
+    }
+
+    /**
+     * Forgets evicted rulebases whose contexts have all been closed, and removes the entries that hold no leases,
+     * compiled rulebase or open contexts. Must be called while holding the lock of the registry.
+     *
+     * @return estimated native memory of the compiled rulebases and the evicted rulebases with open contexts.
+     */
+    private long sweep() {
+        long bytes = 0L;
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            entry.evicted.removeIf(compiledRulebase -> compiledRulebase.openContexts() == 0);
+            if (entry.references == 0 && !entry.isResident() && entry.evicted.isEmpty()) {
+                iterator.remove();
+            }
+            else {
+                bytes += entry.footprint();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return estimated native memory of the compiled rulebases, including evicted rulebases whose contexts are open.
+     */
+    public synchronized long residentBytes() {
+        return sweep();
+    }
+
+    /**
+     * @return footprint and hit rate of every rulebase of this registry that has not been forgotten, in the order they
+     *         were first acquired.
+     */
+    public synchronized List<RulebaseStats> stats() {
+        sweep();
+        final List<RulebaseStats> stats = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            stats.add(entry.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Closes every compiled rulebase. Contexts created from leases remain usable until they are closed, but no more
+     * rulebases can be acquired and open leases can't create contexts.
+     */
+    @Override
+    public void close() {
+        final List<Entry> closing;
+        synchronized (this) {
+            closed = true;
+            closing = new ArrayList<>(entries.values());
+        }
+        // Outside of the registry lock, a rulebase that is still being compiled is closed when its compilation ends
+        for (Entry entry : closing) {
+            entry.evict();
+        }
+    }
+
+    private static String sha256(final String rulebase) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        final byte[] bytes = digest.digest(rulebase.getBytes(StandardCharsets.UTF_8));
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit(b >> HEX_DIGIT_BITS & HEX_DIGIT_MASK, HEX_RADIX));
+            hex.append(Character.forDigit(b & HEX_DIGIT_MASK, HEX_RADIX));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Rulebase of the registry. Reference counts and use times are guarded by the registry and the compiled rulebase by
+     * the entry itself, which is held for the whole compilation. Residency, size and counters are read without either
+     * lock, so that stats() and evict() never wait for a compilation.
+     */
+    private final class Entry {
+
+        private final String key;
+        private final Supplier<LognormFactory> factory;
+        private final LongAdder hits;
+        private final LongAdder misses;
+        private final LongAdder evictions;
+        private int references;
+        private long lastUsedNanos;
+        // Evicted compiled rulebases whose contexts may still be open
+        private final ConcurrentLinkedQueue<CompiledRulebase> evicted;
+        private CompiledRulebase compiledRulebase;
+        private volatile boolean resident;
+        private volatile long estimatedBytes;
+
+        private Entry(final String key, final Supplier<LognormFactory> factory) {
+            this.key = key;
+            this.factory = factory;
+            this.resident = false;
+            this.estimatedBytes = 0L;
+            this.hits = new LongAdder();
+            this.misses = new LongAdder();
+            this.evictions = new LongAdder();
+            this.evicted = new ConcurrentLinkedQueue<>();
+        }
+
+        private synchronized CompiledRulebase compiled() {
+            if (compiledRulebase == null) {
+                final LognormFactory rulebaseFactory = factory.get();
+                compiledRulebase = rulebaseFactory.compile();
+                estimatedBytes = rulebaseFactory.estimatedBytes();
+                resident = true;
+                misses.increment();
+            }
+            else {
+                hits.increment();
+            }
+            return compiledRulebase;
+        }
+
+        private boolean isResident() {
+            return resident;
+        }
+
+        private synchronized void evict() {
+            if (compiledRulebase == null) {
+                return;
+            }
+            // Contexts created from the compiled rulebase hold references of their own to the shared rulebase in C
+            compiledRulebase.close();
+            evicted.add(compiledRulebase);
+            compiledRulebase = null;
+            resident = false;
+            evictions.increment();
+        }
+
+        /**
+         * @return estimated native memory of the compiled rulebase and of the evicted ones with open contexts.
+         */
+        private long footprint() {
+            return estimatedBytes * ((resident ? 1 : 0) + evicted.size());
+        }
+
+        /**
+         * Must be called while holding the lock of the registry, which guards the reference count.
+         */
+        private RulebaseStats stats() {
+            return new RulebaseStats(
+                    key,
+                    resident,
+                    estimatedBytes,
+                    references,
+                    hits.sum(),
+                    misses.sum(),
+                    evictions.sum()
+            );
+        }
+    }
+
+    /**
+     * Reference to a compiled rulebase of the registry, which is not evicted while the Lease is open. Contexts created
+     * with lognorm() share the compiled rulebase and must be closed separately.
+     */
+    public final class Lease implements LognormSource, AutoCloseable {
+
+        private final Entry entry;
+        private final CompiledRulebase compiledRulebase;
+        private boolean released;
+
+        private Lease(final Entry entry, final CompiledRulebase compiledRulebase) {
+            this.entry = entry;
+            this.compiledRulebase = compiledRulebase;
+            this.released = false;
+        }
+
+        /**
+         * @return identity of the leased rulebase.
+         */
+        public String key() {
+            return entry.key;
+        }
+
+        @Override
+        public synchronized JavaLognormImpl lognorm() {
+            if (released) {
+                throw new IllegalStateException("Lease of rulebase <" + entry.key + "> is closed");
+            }
+            return compiledRulebase.lognorm();
+        }
+
+        /**
+         * Releases the reference to the rulebase, after which it can be evicted.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(entry);
+            evict();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+/**
+ * Snapshot of the footprint and usage of a rulebase in a RulebaseRegistry.
+ */
+public final class RulebaseStats {
+
+    private final String key;
+    private final boolean resident;
+    private final long estimatedBytes;
+    private final int references;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    RulebaseStats(
+            final String key,
+            final boolean resident,
+            final long estimatedBytes,
+            final int references,
+            final long hits,
+            final long misses,
+            final long evictions
+    ) {
+        this.key = key;
+        this.resident = resident;
+        this.estimatedBytes = estimatedBytes;
+        this.references = references;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * @return identity of the rulebase, a hash of its content or the path and modification time of its file.
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @return true if the rulebase is compiled and holds native memory.
+     */
+    public boolean resident() {
+        return resident;
+    }
+
+    /**
+     * @return estimated native memory of the compiled rulebase, see NativeMemoryTracker.
+     */
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return amount of leases that are not closed.
+     */
+    public int references() {
+        return references;
+    }
+
+    /**
+     * @return amount of acquisitions that found the rulebase compiled.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return amount of acquisitions that compiled the rulebase.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return amount of times the rulebase was evicted to stay within the memory budget.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return share of acquisitions that found the rulebase compiled, 0 if it has not been acquired.
+     */
+    public double hitRate() {
+        final long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "RulebaseStats{key=" + key + ", resident=" + resident + ", estimatedBytes=" + estimatedBytes
+                + ", references=" + references + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + "}";
+    }
+}
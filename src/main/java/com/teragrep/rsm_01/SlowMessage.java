@@ -0,0 +1,124 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+/**
+ * A message captured by SlowMessageProfiler.
+ */
+public final class SlowMessage {
+
+    private final String text;
+    private final int length;
+    private final long durationNanos;
+    private final int returnCode;
+    private final String rule;
+    private final String ruleLocation;
+
+    SlowMessage(
+            final String text,
+            final int length,
+            final long durationNanos,
+            final int returnCode,
+            final String rule,
+            final String ruleLocation
+    ) {
+        this.text = text;
+        this.length = length;
+        this.durationNanos = durationNanos;
+        this.returnCode = returnCode;
+        this.rule = rule;
+        this.ruleLocation = ruleLocation;
+    }
+
+    /**
+     * @return the message, truncated to SlowMessageProfiler.MAX_TEXT_LENGTH characters.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * @return length of the whole message in characters.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return duration of the normalization in nanoseconds.
+     */
+    public long durationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return liblognorm return code, 0 for success.
+     */
+    public int returnCode() {
+        return returnCode;
+    }
+
+    /**
+     * @return mockup of the matched rule, or an empty string if CTXOPT_ADD_RULE is not enabled or no rule matched.
+     */
+    public String rule() {
+        return rule;
+    }
+
+    /**
+     * @return rulebase file and line of the matched rule, or an empty string if CTXOPT_ADD_RULE_LOCATION is not enabled
+     *         or no rule matched.
+     */
+    public String ruleLocation() {
+        return ruleLocation;
+    }
+
+    @Override
+    public String toString() {
+        return "SlowMessage{durationNanos=" + durationNanos + ", length=" + length + ", returnCode=" + returnCode
+                + ", rule=" + rule + ", ruleLocation=" + ruleLocation + ", text=" + text + "}";
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Captures the slowest messages normalized by the contexts of a LognormFactory, to find the messages that cause tail
+ * latency. One in every sampleInterval single-message calls is timed, chosen at random, and the slowest timed messages
+ * are kept with their length, duration and matched rule. The matched rule is known only when the contexts have
+ * CTXOPT_ADD_RULE or CTXOPT_ADD_RULE_LOCATION enabled. Calls that are not sampled cost a random number, and a sampled
+ * call that is not among the slowest costs two clock reads. A disabled instance records nothing.
+ */
+public final class SlowMessageProfiler {
+
+    /**
+     * Amount of characters of a message that are kept, so that huge messages do not keep large amounts of memory.
+     */
+    public static final int MAX_TEXT_LENGTH = 1024;
+
+    private static final SlowMessageProfiler DISABLED = new SlowMessageProfiler(0, 0, 0L);
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final int sampleInterval;
+    private final long thresholdNanos;
+    private final PriorityQueue<SlowMessage> slowest;
+    private final LongAdder sampled;
+    // Duration a sampled message must exceed to enter the buffer, read without locking
+    private volatile long floorNanos;
+
+    /**
+     * @param capacity       Amount of slowest messages to keep.
+     * @param sampleInterval Time one in every sampleInterval calls, 1 times every call.
+     */
+    public SlowMessageProfiler(final int capacity, final int sampleInterval) {
+        this(capacity, sampleInterval, 0L);
+    }
+
+    /**
+     * @param capacity       Amount of slowest messages to keep.
+     * @param sampleInterval Time one in every sampleInterval calls, 1 times every call.
+     * @param thresholdNanos Keep only messages that took at least this long.
+     */
+    public SlowMessageProfiler(final int capacity, final int sampleInterval, final long thresholdNanos) {
+        if (capacity < 0 || sampleInterval < 0 || capacity > 0 && sampleInterval == 0) {
+            throw new IllegalArgumentException(
+                    "Capacity and sample interval must be positive, got <" + capacity + "> and <" + sampleInterval + ">"
+            );
+        }
+        this.capacity = capacity;
+        this.sampleInterval = capacity == 0 ? 0 : sampleInterval;
+        this.thresholdNanos = thresholdNanos;
+        this.slowest = new PriorityQueue<>(Math.max(1, capacity), Comparator.comparingLong(SlowMessage::durationNanos));
+        this.sampled = new LongAdder();
+        this.floorNanos = thresholdNanos - 1;
+    }
+
+    /**
+     * @return shared SlowMessageProfiler that records nothing.
+     */
+    public static SlowMessageProfiler disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return true if this profiler records messages.
+     */
+    public boolean isEnabled() {
+        return sampleInterval > 0;
+    }
+
+    /**
+     * @return System.nanoTime() if the call is sampled, Long.MIN_VALUE otherwise.
+     */
+    long start() {
+        long start = NOT_SAMPLED;
+        if (sampleInterval == 1 || sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) == 0) {
+            start = System.nanoTime();
+        }
+        return start;
+    }
+
+    /**
+     * @param start Value returned by start() before the call.
+     * @return duration of a sampled call in nanoseconds, or a negative value if the call was not sampled or was not
+     *         among the slowest calls so far.
+     */
+    long slowNanos(final long start) {
+        long slowNanos = NOT_SAMPLED;
+        if (start != NOT_SAMPLED) {
+            sampled.increment();
+            final long nanos = System.nanoTime() - start;
+            if (nanos > floorNanos) {
+                slowNanos = nanos;
+            }
+        }
+        return slowNanos;
+    }
+
+    /**
+     * Records a sampled message that took longer than the messages in the buffer.
+     *
+     * @param text         The normalized message.
+     * @param nanos        Value returned by slowNanos().
+     * @param returnCode   liblognorm return code of the message.
+     * @param rule         Mockup of the matched rule, or an empty string.
+     * @param ruleLocation Location of the matched rule, or an empty string.
+     */
+    void record(
+            final String text,
+            final long nanos,
+            final int returnCode,
+            final String rule,
+            final String ruleLocation
+    ) {
+        final String kept = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+        final SlowMessage slowMessage = new SlowMessage(kept, text.length(), nanos, returnCode, rule, ruleLocation);
+        synchronized (slowest) {
+            if (nanos <= floorNanos) {
+                return;
+            }
+            slowest.add(slowMessage);
+            if (slowest.size() > capacity) {
+                slowest.poll();
+            }
+            if (slowest.size() == capacity) {
+                floorNanos = Math.max(thresholdNanos - 1, slowest.peek().durationNanos());
+            }
+        }
+    }
+
+    /**
+     * @return the slowest captured messages, slowest first.
+     */
+    public List<SlowMessage> slowest() {
+        final List<SlowMessage> messages;
+        synchronized (slowest) {
+            messages = new ArrayList<>(slowest);
+        }
+        messages.sort(Comparator.comparingLong(SlowMessage::durationNanos).reversed());
+        return messages;
+    }
+
+    /**
+     * @return amount of calls that have been timed.
+     */
+    public long sampled() {
+        return sampled.sum();
+    }
+
+    /**
+     * Clears the captured messages and the amount of sampled calls.
+     */
+    public void reset() {
+        synchronized (slowest) {
+            slowest.clear();
+            floorNanos = thresholdNanos - 1;
+        }
+        sampled.reset();
+    }
+}
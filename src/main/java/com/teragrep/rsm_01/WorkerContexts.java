@@ -0,0 +1,105 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * liblognorm contexts of the worker threads of an executor, one per thread, created from the LognormSource when a
+ * thread first needs one. The contexts are closed once the worker threads have terminated.
+ */
+final class WorkerContexts {
+
+    private final LognormSource lognormSource;
+    private final Queue<JavaLognormImpl> contexts;
+    private final ThreadLocal<JavaLognormImpl> workerContext;
+
+    WorkerContexts(final LognormSource lognormSource) {
+        this.lognormSource = lognormSource;
+        this.contexts = new ConcurrentLinkedQueue<>();
+        this.workerContext = ThreadLocal.withInitial(this::createContext);
+    }
+
+    private JavaLognormImpl createContext() {
+        final JavaLognormImpl javaLognormImpl = lognormSource.lognorm();
+        contexts.add(javaLognormImpl);
+        return javaLognormImpl;
+    }
+
+    /**
+     * @return context of the calling worker thread.
+     */
+    JavaLognormImpl get() {
+        return workerContext.get();
+    }
+
+    /**
+     * Shuts the executor down, waits for its worker threads to terminate and closes their contexts.
+     *
+     * @param executorService Executor whose worker threads use the contexts.
+     * @throws IllegalArgumentException Throws if closing a context fails.
+     */
+    void close(final ExecutorService executorService) throws IllegalArgumentException {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Worker threads did not terminate, contexts were not closed");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for worker threads to terminate", e);
+        }
+        JavaLognormImpl javaLognormImpl = contexts.poll();
+        while (javaLognormImpl != null) {
+            javaLognormImpl.close();
+            javaLognormImpl = contexts.poll();
+        }
+    }
+}
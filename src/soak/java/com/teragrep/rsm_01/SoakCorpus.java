@@ -0,0 +1,147 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.Random;
+
+/**
+ * Synthetic rulebase and log messages for the soak test. Messages are generated from a seeded Random, so every run
+ * normalizes the same sequence. A share of the messages does not match any rule, and message lengths vary from a few
+ * bytes to several kilobytes.
+ */
+final class SoakCorpus {
+
+    private static final String[] USERS = new String[] {
+            "alice", "bob", "carol", "dave", "eve", "mallory"
+    };
+    private static final String[] HOSTS = new String[] {
+            "web-1", "web-2", "db-1", "cache-1"
+    };
+    private static final String[] MONTHS = new String[] {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    private final String name;
+    private final int rules;
+
+    SoakCorpus(final String name, final int rules) {
+        this.name = name;
+        this.rules = rules;
+    }
+
+    /**
+     * @return the corpora the soak test runs: key-value events, syslog lines and messages with many typed fields.
+     */
+    static SoakCorpus[] corpora() {
+        return new SoakCorpus[] {
+                new SoakCorpus("events", 200), new SoakCorpus("syslog", 1), new SoakCorpus("fields", 1)
+        };
+    }
+
+    String name() {
+        return name;
+    }
+
+    String rulebase() {
+        final StringBuilder stringBuilder = new StringBuilder("version=2\n");
+        if ("events".equals(name)) {
+            for (int i = 0; i < rules; i++) {
+                stringBuilder.append("rule=:event").append(i).append(" id=%id:number% user=%user:word% %rest:rest%\n");
+            }
+        }
+        else if ("syslog".equals(name)) {
+            stringBuilder
+                    .append("rule=:%date:date-rfc3164% %host:word% %tag:char-to{\"extradata\":\":\"}%: %msg:rest%\n");
+        }
+        else {
+            stringBuilder
+                    .append(
+                            "rule=:ip=%ip:ipv4% port=%port:number% bytes=%bytes:number% ratio=%ratio:float% path=%path:word%\n"
+                    );
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * @param random   Source of the message contents.
+     * @param matching true for a message that matches a rule, false for one that does not.
+     * @return generated message.
+     */
+    String message(final Random random, final boolean matching) {
+        if (!matching) {
+            return "unmatched " + name + " message " + padding(random);
+        }
+        final String message;
+        if ("events".equals(name)) {
+            message = "event" + random.nextInt(rules) + " id=" + random.nextInt(1000000) + " user="
+                    + USERS[random.nextInt(USERS.length)] + " " + padding(random);
+        }
+        else if ("syslog".equals(name)) {
+            message = MONTHS[random.nextInt(MONTHS.length)] + " " + (10 + random.nextInt(18)) + " 12:" + (10
+                    + random.nextInt(50)) + ":" + (10 + random.nextInt(50)) + " " + HOSTS[random.nextInt(HOSTS.length)]
+                    + " app[" + random.nextInt(65536) + "]: " + padding(random);
+        }
+        else {
+            message = "ip=10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random
+                    .nextInt(256) + " port=" + random.nextInt(65536) + " bytes=" + random.nextInt(Integer.MAX_VALUE)
+                    + " ratio=" + random.nextInt(100) + "." + random.nextInt(100) + " path=" + USERS[random.nextInt(USERS.length)];
+        }
+        return message;
+    }
+
+    /**
+     * @return free text that is usually short, and sometimes several kilobytes long.
+     */
+    private static String padding(final Random random) {
+        final int length = random.nextInt(100) == 0 ? 1024 + random.nextInt(8192) : random.nextInt(64);
+        final StringBuilder stringBuilder = new StringBuilder(length + 8);
+        stringBuilder.append("text");
+        while (stringBuilder.length() < length) {
+            stringBuilder.append(' ').append(Integer.toString(random.nextInt(), 36));
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+/**
+ * Throughput and memory measured by the soak test over one sampling interval.
+ */
+final class SoakSample {
+
+    private final long elapsedMillis;
+    private final double messagesPerSecond;
+    private final long rssBytes;
+    private final long nativeContexts;
+    private final long nativeResults;
+    private final long nativeBytes;
+
+    SoakSample(
+            final long elapsedMillis,
+            final double messagesPerSecond,
+            final long rssBytes,
+            final long nativeContexts,
+            final long nativeResults,
+            final long nativeBytes
+    ) {
+        this.elapsedMillis = elapsedMillis;
+        this.messagesPerSecond = messagesPerSecond;
+        this.rssBytes = rssBytes;
+        this.nativeContexts = nativeContexts;
+        this.nativeResults = nativeResults;
+        this.nativeBytes = nativeBytes;
+    }
+
+    double messagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    long rssBytes() {
+        return rssBytes;
+    }
+
+    long nativeContexts() {
+        return nativeContexts;
+    }
+
+    long nativeBytes() {
+        return nativeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String
+                .format(
+                        "elapsed=%ds throughput=%.0f/s rss=%dMiB nativeContexts=%d nativeResults=%d nativeBytes=%dKiB",
+                        elapsedMillis / 1000, messagesPerSecond, rssBytes >> 20, nativeContexts, nativeResults,
+                        nativeBytes >> 10
+                );
+    }
+}
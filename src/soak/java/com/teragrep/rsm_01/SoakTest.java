@@ -0,0 +1,303 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Long-running stress test that normalizes synthetic corpora from many threads, and fails if memory grows or throughput
+ * decays over the run. Worker threads normalize through every API of JavaLognormImpl, and periodically close their
+ * context and open a new one, half of them from a LognormFactory and half from a CompiledRulebase. Throughput, the
+ * resident set size of the process and the native allocations of NativeMemoryTracker are sampled at a fixed interval.
+ * Run with mvn -Psoak verify, configured with the system properties read in main().
+ */
+public final class SoakTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SoakTest.class);
+
+    private final long durationMillis;
+    private final int threads;
+    private final long intervalMillis;
+    private final int contextChurn;
+    private final long maxRssGrowthBytes;
+    private final double maxThroughputDecay;
+    private final LongAdder processed;
+    private final AtomicBoolean running;
+
+    private SoakTest(
+            final long durationMillis,
+            final int threads,
+            final long intervalMillis,
+            final int contextChurn,
+            final long maxRssGrowthBytes,
+            final double maxThroughputDecay
+    ) {
+        this.durationMillis = durationMillis;
+        this.threads = threads;
+        this.intervalMillis = intervalMillis;
+        this.contextChurn = contextChurn;
+        this.maxRssGrowthBytes = maxRssGrowthBytes;
+        this.maxThroughputDecay = maxThroughputDecay;
+        this.processed = new LongAdder();
+        this.running = new AtomicBoolean(true);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final SoakTest soakTest = new SoakTest(
+                TimeUnit.SECONDS.toMillis(Long.getLong("soak.duration", 900L)),
+                Integer.getInteger("soak.threads", Runtime.getRuntime().availableProcessors() * 2),
+                TimeUnit.SECONDS.toMillis(Long.getLong("soak.interval", 10L)),
+                Integer.getInteger("soak.contextChurn", 100000),
+                Long.getLong("soak.maxRssGrowth", 64L) << 20,
+                Double.parseDouble(System.getProperty("soak.maxThroughputDecay", "0.25"))
+        );
+        final List<String> failures = soakTest.run();
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Soak test failed: " + String.join(", ", failures));
+        }
+        LOGGER.info("Soak test passed");
+    }
+
+    private List<String> run() throws Exception {
+        final SoakCorpus[] corpora = SoakCorpus.corpora();
+        final LognormFactory[] factories = new LognormFactory[corpora.length];
+        final CompiledRulebase[] compiled = new CompiledRulebase[corpora.length];
+        for (int i = 0; i < corpora.length; i++) {
+            factories[i] = new LognormFactory(corpora[i].rulebase());
+            compiled[i] = factories[i].compile();
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final SoakCorpus corpus = corpora[i % corpora.length];
+            final LognormSource source = i % 2 == 0 ? factories[i % corpora.length] : compiled[i % corpora.length];
+            final long seed = i;
+            workers.add(executorService.submit(() -> {
+                work(corpus, source, new Random(seed));
+                return null;
+            }));
+        }
+        final List<SoakSample> samples = sample(workers);
+        running.set(false);
+        executorService.shutdown();
+        for (Future<?> worker : workers) {
+            // Rethrows failures of the workers
+            worker.get();
+        }
+        for (CompiledRulebase compiledRulebase : compiled) {
+            compiledRulebase.close();
+        }
+        return evaluate(samples);
+    }
+
+    /**
+     * Normalizes messages of the corpus until the test ends. Matching messages go through normalize(),
+     * normalizeRecord() and normalizeBytes(), unmatched ones through tryNormalize(), and every 64th message is followed
+     * by a batch.
+     */
+    private void work(final SoakCorpus corpus, final LognormSource source, final Random random) {
+        final String[] batch = new String[64];
+        final String[] out = new String[batch.length];
+        JavaLognormImpl javaLognormImpl = source.lognorm();
+        try {
+            long count = 0;
+            while (running.get()) {
+                final boolean matching = random.nextInt(10) != 0;
+                final String message = corpus.message(random, matching);
+                if (!matching) {
+                    javaLognormImpl.tryNormalize(message);
+                }
+                else if (count % 3 == 0) {
+                    javaLognormImpl.normalize(message);
+                }
+                else if (count % 3 == 1) {
+                    try (NormalizedRecord record = javaLognormImpl.normalizeRecord(message)) {
+                        record.fieldNames();
+                    }
+                }
+                else {
+                    javaLognormImpl.normalizeBytes(message);
+                }
+                batch[(int) (count % batch.length)] = message;
+                if (count % batch.length == batch.length - 1) {
+                    javaLognormImpl.normalizeBatch(batch, out);
+                }
+                count++;
+                processed.increment();
+                if (count % contextChurn == 0) {
+                    javaLognormImpl.close();
+                    javaLognormImpl = source.lognorm();
+                }
+            }
+        }
+        finally {
+            javaLognormImpl.close();
+        }
+    }
+
+    private List<SoakSample> sample(final List<Future<?>> workers) throws InterruptedException {
+        final List<SoakSample> samples = new ArrayList<>();
+        final long start = System.nanoTime();
+        long last = start;
+        long lastProcessed = 0;
+        while (TimeUnit.NANOSECONDS.toMillis(last - start) < durationMillis) {
+            Thread.sleep(intervalMillis);
+            for (Future<?> worker : workers) {
+                if (worker.isDone()) {
+                    // A worker failed, stop sampling so that the failure is reported
+                    return samples;
+                }
+            }
+            final long now = System.nanoTime();
+            final long total = processed.sum();
+            final NativeMemoryTracker tracker = NativeMemoryTracker.global();
+            final SoakSample soakSample = new SoakSample(
+                    TimeUnit.NANOSECONDS.toMillis(now - start),
+                    (total - lastProcessed) * 1e9 / (now - last),
+                    rss(),
+                    tracker.contexts(),
+                    tracker.results(),
+                    tracker.outstandingBytes()
+            );
+            LOGGER.info("{}", soakSample);
+            samples.add(soakSample);
+            last = now;
+            lastProcessed = total;
+        }
+        return samples;
+    }
+
+    /**
+     * Compares the samples at the start of the run, after a fifth of the run has been skipped as warmup, to the samples
+     * at the end of the run. Native allocations are also checked to be bounded while running and released at the end.
+     */
+    private List<String> evaluate(final List<SoakSample> samples) {
+        final List<String> failures = new ArrayList<>();
+        // Each worker holds a context, and each CompiledRulebase one more
+        final long maxContexts = threads + SoakCorpus.corpora().length;
+        for (SoakSample soakSample : samples) {
+            if (soakSample.nativeContexts() > maxContexts) {
+                failures.add("<" + soakSample.nativeContexts() + "> native contexts exceed <" + maxContexts + ">");
+                break;
+            }
+        }
+        final List<SoakSample> measured = samples.subList(samples.size() / 5, samples.size());
+        if (measured.size() < 4) {
+            failures.add("only <" + measured.size() + "> samples after warmup, run longer or sample more often");
+        }
+        else {
+            final int quarter = measured.size() / 4;
+            final List<SoakSample> early = measured.subList(0, quarter);
+            final List<SoakSample> late = measured.subList(measured.size() - quarter, measured.size());
+            final double earlyThroughput = mean(early, SoakSample::messagesPerSecond);
+            final double lateThroughput = mean(late, SoakSample::messagesPerSecond);
+            LOGGER
+                    .info("Throughput <{}>/s at start, <{}>/s at end", Math.round(earlyThroughput), Math.round(lateThroughput));
+            if (lateThroughput < earlyThroughput * (1 - maxThroughputDecay)) {
+                failures
+                        .add(String.format("throughput decayed from %.0f/s to %.0f/s", earlyThroughput, lateThroughput));
+            }
+            final double rssGrowth = mean(late, SoakSample::rssBytes) - mean(early, SoakSample::rssBytes);
+            LOGGER.info("RSS grew <{}> MiB", String.format("%.1f", rssGrowth / (1 << 20)));
+            if (rssGrowth > maxRssGrowthBytes) {
+                failures.add(String.format("RSS grew %.1f MiB", rssGrowth / (1 << 20)));
+            }
+            final double nativeGrowth = mean(late, SoakSample::nativeBytes) - mean(early, SoakSample::nativeBytes);
+            if (nativeGrowth > maxRssGrowthBytes) {
+                failures.add(String.format("outstanding native memory grew %.1f MiB", nativeGrowth / (1 << 20)));
+            }
+        }
+        final NativeMemoryTracker tracker = NativeMemoryTracker.global();
+        if (tracker.contexts() != 0 || tracker.results() != 0) {
+            failures
+                    .add(
+                            "<" + tracker.contexts() + "> contexts and <" + tracker.results()
+                                    + "> results were not freed after the run"
+                    );
+        }
+        if (tracker.leakedResources() != 0) {
+            failures.add("<" + tracker.leakedResources() + "> native resources were not closed");
+        }
+        return failures;
+    }
+
+    private static double mean(final List<SoakSample> samples, final ToDoubleFunction<SoakSample> value) {
+        return samples.stream().mapToDouble(value).average().orElse(0);
+    }
+
+    /**
+     * @return resident set size of the process from /proc/self/status, or 0 if it is not available.
+     */
+    private static long rss() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    // VmRSS:     123456 kB
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) << 10;
+                }
+            }
+        }
+        catch (IOException e) {
+            LOGGER.warn("Can't read /proc/self/status", e);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class AsyncJavaLognormTest {
+
+    @Test
+    public void normalizeAsyncTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (AsyncJavaLognorm asyncJavaLognorm = new AsyncJavaLognorm(lognormFactory, 2, 1000)) {
+                List<CompletableFuture<String>> futures = new ArrayList<>();
+                for (int i = 0; i < 100; i++) {
+                    futures.add(asyncJavaLognorm.normalizeAsync("message" + i));
+                }
+                for (int i = 0; i < 100; i++) {
+                    Assertions.assertEquals("{ \"all\": \"message" + i + "\" }", futures.get(i).get());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void normalizeBatchAsyncTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (AsyncJavaLognorm asyncJavaLognorm = new AsyncJavaLognorm(lognormFactory, 2, 1000)) {
+                List<String> s = asyncJavaLognorm.normalizeBatchAsync(Arrays.asList("offline", "online")).get();
+                Assertions.assertEquals(Arrays.asList("{ \"all\": \"offline\" }", "{ \"all\": \"online\" }"), s);
+            }
+        });
+    }
+
+    @Test
+    public void normalizeAsyncExceptionTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (AsyncJavaLognorm asyncJavaLognorm = new AsyncJavaLognorm(lognormFactory, 1, 10)) {
+                CompletableFuture<String> future = asyncJavaLognorm.normalizeAsync("unparseable");
+                ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+                Assertions.assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+                Assertions
+                        .assertEquals(
+                                "ln_normalize() failed to perform extraction with error code: -1000",
+                                e.getCause().getMessage()
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void rejectedTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            AsyncJavaLognorm asyncJavaLognorm = new AsyncJavaLognorm(lognormFactory, 1, 1);
+            asyncJavaLognorm.close();
+            // Submission after close is rejected without blocking or throwing
+            CompletableFuture<String> future = asyncJavaLognorm.normalizeAsync("offline");
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+            Assertions.assertEquals(RejectedExecutionException.class, e.getCause().getClass());
+        });
+    }
+}
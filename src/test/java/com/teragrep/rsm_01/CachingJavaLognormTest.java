@@ -0,0 +1,213 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class CachingJavaLognormTest {
+
+    @Test
+    public void normalizeHitTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(javaLognormImpl, 10);
+                Assertions.assertEquals("{ \"all\": \"offline\" }", cachingJavaLognorm.normalize("offline"));
+                Assertions.assertEquals("{ \"all\": \"offline\" }", cachingJavaLognorm.normalize("offline"));
+                Assertions.assertEquals(1, cachingJavaLognorm.misses());
+                Assertions.assertEquals(1, cachingJavaLognorm.hits());
+                Assertions.assertEquals(1, cachingJavaLognorm.size());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeNegativeHitTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(javaLognormImpl, 10);
+                for (int i = 0; i < 2; i++) {
+                    IllegalArgumentException e = Assertions
+                            .assertThrows(
+                                    IllegalArgumentException.class, () -> cachingJavaLognorm.normalize("unparseable")
+                            );
+                    Assertions
+                            .assertEquals(
+                                    "ln_normalize() failed to perform extraction with error code: -1000", e.getMessage()
+                            );
+                }
+                // Second failure is served from the cache
+                Assertions.assertEquals(1, cachingJavaLognorm.misses());
+                Assertions.assertEquals(1, cachingJavaLognorm.hits());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeBatchTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(javaLognormImpl, 10);
+                cachingJavaLognorm.normalize("online");
+                List<String> s = cachingJavaLognorm.normalizeBatch(Arrays.asList("offline", "online", "offline"));
+                Assertions
+                        .assertEquals(
+                                Arrays
+                                        .asList(
+                                                "{ \"all\": \"offline\" }", "{ \"all\": \"online\" }",
+                                                "{ \"all\": \"offline\" }"
+                                        ),
+                                s
+                        );
+                Assertions.assertEquals(3, cachingJavaLognorm.misses());
+                Assertions.assertEquals(1, cachingJavaLognorm.hits());
+            }
+        });
+    }
+
+    @Test
+    public void evictionByEntriesTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(javaLognormImpl, 2);
+                cachingJavaLognorm.normalize("first");
+                cachingJavaLognorm.normalize("second");
+                cachingJavaLognorm.normalize("first"); // second becomes least recently used
+                cachingJavaLognorm.normalize("third");
+                Assertions.assertEquals(2, cachingJavaLognorm.size());
+                Assertions.assertEquals(1, cachingJavaLognorm.evictions());
+                cachingJavaLognorm.normalize("first");
+                Assertions.assertEquals(2, cachingJavaLognorm.hits());
+            }
+        });
+    }
+
+    @Test
+    public void evictionByWeightTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(javaLognormImpl, 100, 200L);
+                cachingJavaLognorm.normalize("first");
+                cachingJavaLognorm.normalize("second");
+                // Only one entry fits within the weight bound
+                Assertions.assertEquals(1, cachingJavaLognorm.size());
+                Assertions.assertTrue(cachingJavaLognorm.weight() <= 200L);
+            }
+        });
+    }
+
+    @Test
+    public void overweightResultTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(javaLognormImpl, 100, 400L);
+                cachingJavaLognorm.normalize("first");
+                cachingJavaLognorm.normalize("second");
+                long weight = cachingJavaLognorm.weight();
+                // Result heavier than the whole cache is returned but does not evict the cached entries
+                char[] chars = new char[200];
+                Arrays.fill(chars, 'x');
+                String large = new String(chars);
+                Assertions.assertEquals("{ \"all\": \"" + large + "\" }", cachingJavaLognorm.normalize(large));
+                Assertions.assertEquals(2, cachingJavaLognorm.size());
+                Assertions.assertEquals(weight, cachingJavaLognorm.weight());
+                Assertions.assertEquals(0, cachingJavaLognorm.evictions());
+                cachingJavaLognorm.normalize("first");
+                Assertions.assertEquals(1, cachingJavaLognorm.hits());
+            }
+        });
+    }
+
+    @Test
+    public void segmentedTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(javaLognormImpl, 1024);
+                for (int i = 0; i < 2048; i++) {
+                    cachingJavaLognorm.normalize("message " + i);
+                }
+                // Each segment holds its share of the entries
+                Assertions.assertEquals(1024, cachingJavaLognorm.size());
+                Assertions.assertEquals(1024, cachingJavaLognorm.evictions());
+                Assertions.assertEquals("{ \"all\": \"message 2047\" }", cachingJavaLognorm.normalize("message 2047"));
+                Assertions.assertEquals(1, cachingJavaLognorm.hits());
+            }
+        });
+    }
+
+    @Test
+    public void clearAfterReloadTest() {
+        assertDoesNotThrow(() -> {
+            try (
+                    ReloadableJavaLognorm reloadableJavaLognorm = new ReloadableJavaLognorm(
+                            new LognormFactory("rule=:%all:rest%")
+                    )
+            ) {
+                CachingJavaLognorm cachingJavaLognorm = new CachingJavaLognorm(reloadableJavaLognorm, 10);
+                Assertions.assertEquals("{ \"all\": \"offline\" }", cachingJavaLognorm.normalize("offline"));
+                reloadableJavaLognorm.reload("rule=:%rest:rest%").get();
+                // Result of the previous rulebase is served until the cache is cleared
+                Assertions.assertEquals("{ \"all\": \"offline\" }", cachingJavaLognorm.normalize("offline"));
+                cachingJavaLognorm.clear();
+                Assertions.assertEquals(0, cachingJavaLognorm.size());
+                Assertions.assertEquals(0L, cachingJavaLognorm.weight());
+                Assertions.assertEquals("{ \"rest\": \"offline\" }", cachingJavaLognorm.normalize("offline"));
+            }
+        });
+    }
+}
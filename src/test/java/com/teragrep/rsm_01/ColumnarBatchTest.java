@@ -0,0 +1,117 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+class ColumnarBatchTest {
+
+    @Test
+    public void schemaFromRulebaseTest() {
+        ColumnSchema schema = ColumnSchema
+                .of(
+                        "version=2\nrule=:%N:number% %name:word% %-:rest%\nrule=:%ratio:float% %N:word%\n"
+                                + "rule=:%host:char-to{\"extradata\":\" \"}% %ratio:float%"
+                );
+        Map<String, ColumnType> expected = new LinkedHashMap<>();
+        expected.put("N", ColumnType.STRING);
+        expected.put("name", ColumnType.STRING);
+        expected.put("ratio", ColumnType.DOUBLE);
+        expected.put("host", ColumnType.STRING);
+        Assertions.assertEquals(expected, schema.columns());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ColumnSchema.of("rule=:literal only"));
+    }
+
+    @Test
+    public void columnVectorTest() {
+        byte[] data = "ab".getBytes(StandardCharsets.UTF_8);
+        ColumnVector strings = new ColumnVector("s", ColumnType.STRING, 3, new byte[] {
+                0b101
+        }, null, null, new int[] {
+                0, 1, 1, 2
+        }, data);
+        Assertions.assertFalse(strings.isNull(0));
+        Assertions.assertTrue(strings.isNull(1));
+        Assertions.assertEquals("a", strings.getString(0));
+        Assertions.assertEquals("", strings.getString(1));
+        Assertions.assertEquals("b", strings.getString(2));
+        Assertions.assertThrows(IllegalStateException.class, () -> strings.getLong(0));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> strings.isNull(3));
+    }
+
+    @Test
+    public void normalizeColumnsTest() {
+        assertDoesNotThrow(() -> {
+            String rulebase = "rule=:Quantity: %N:number% %name:word%";
+            LognormFactory lognormFactory = new LognormFactory(rulebase);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                ColumnarBatch batch = javaLognormImpl.normalizeColumns(new String[] {
+                        "Quantity: 1 apple", "unparseable", "Quantity: 22 pear"
+                }, ColumnSchema.of(rulebase));
+                Assertions.assertEquals(3, batch.rowCount());
+                Assertions.assertArrayEquals(new int[] {
+                        0, -1000, 0
+                }, batch.returnCodes());
+                ColumnVector n = batch.column("N");
+                Assertions.assertEquals(1, n.getLong(0));
+                Assertions.assertTrue(n.isNull(1));
+                Assertions.assertEquals(22, n.getLong(2));
+                ColumnVector name = batch.column("name");
+                Assertions.assertEquals("apple", name.getString(0));
+                Assertions.assertTrue(name.isNull(1));
+                Assertions.assertEquals("pear", name.getString(2));
+                Assertions.assertEquals(1, javaLognormImpl.failures());
+            }
+        });
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class CompiledRulebaseTest {
+
+    @Test
+    public void lognormTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (CompiledRulebase compiledRulebase = lognormFactory.compile()) {
+                try (
+                        JavaLognormImpl first = compiledRulebase.lognorm();
+                        JavaLognormImpl second = compiledRulebase.lognorm()
+                ) {
+                    Assertions.assertEquals("{ \"all\": \"offline\" }", first.normalize("offline"));
+                    Assertions.assertEquals("{ \"all\": \"online\" }", second.normalize("online"));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void lognormFromFileWithOptsTest() {
+        assertDoesNotThrow(() -> {
+            LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+            opts.CTXOPT_ADD_ORIGINALMSG = true;
+            LognormFactory lognormFactory = new LognormFactory(opts, new File("src/test/resources/sample.rulebase"));
+            try (CompiledRulebase compiledRulebase = lognormFactory.compile()) {
+                try (JavaLognormImpl javaLognormImpl = compiledRulebase.lognorm()) {
+                    // Options of the compiled context are shared as well
+                    Assertions
+                            .assertEquals(
+                                    "{ \"all\": \"offline\", \"originalmsg\": \"offline\" }",
+                                    javaLognormImpl.normalize("offline")
+                            );
+                }
+            }
+        });
+    }
+
+    @Test
+    public void contextOutlivesCompiledRulebaseTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            CompiledRulebase compiledRulebase = lognormFactory.compile();
+            JavaLognormImpl javaLognormImpl = compiledRulebase.lognorm();
+            compiledRulebase.close();
+            // Shared context stays usable until every sharer is closed
+            Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+            javaLognormImpl.close(); // Throws if ln_exitCtx doesn't return zero.
+        });
+    }
+
+    @Test
+    public void lognormAfterCloseTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            CompiledRulebase compiledRulebase = lognormFactory.compile();
+            compiledRulebase.close();
+            IllegalStateException e = Assertions
+                    .assertThrows(IllegalStateException.class, () -> compiledRulebase.lognorm());
+            Assertions.assertEquals("CompiledRulebase is closed", e.getMessage());
+        });
+    }
+
+    @Test
+    public void pooledTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    CompiledRulebase compiledRulebase = lognormFactory.compile();
+                    PooledJavaLognorm pooledJavaLognorm = new PooledJavaLognorm(compiledRulebase, 4, 60000L)
+            ) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", pooledJavaLognorm.normalize("offline"));
+            }
+        });
+    }
+}
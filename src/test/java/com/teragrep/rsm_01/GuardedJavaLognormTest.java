@@ -0,0 +1,209 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Pointer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+class GuardedJavaLognormTest {
+
+    @Test
+    public void normalizeTest() {
+        assertDoesNotThrow(() -> {
+            NormalizationGuard guard = new NormalizationGuard(1024, OversizePolicy.TRUNCATE, 5000L);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%").withGuard(guard);
+            try (GuardedJavaLognorm guardedJavaLognorm = new GuardedJavaLognorm(lognormFactory, 2)) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", guardedJavaLognorm.normalize("offline"));
+                Assertions.assertEquals(0, guardedJavaLognorm.tryNormalize("online").returnCode());
+            }
+            Assertions
+                    .assertThrows(
+                            IllegalArgumentException.class,
+                            () -> new GuardedJavaLognorm(new LognormFactory("rule=:%all:rest%"), 1)
+                    );
+        });
+    }
+
+    @Test
+    public void deadlineTest() {
+        assertDoesNotThrow(() -> {
+            CountDownLatch unblock = new CountDownLatch(1);
+            LognormBinding delegate = new ProxyLognormBinding();
+            // Binding that blocks on a message, standing in for a message that takes long to normalize
+            LognormBinding blocking = new LognormBinding() {
+
+                @Override
+                public Pointer normalize(Pointer ctx, String text, Pointer rv) {
+                    if ("slow".equals(text)) {
+                        try {
+                            unblock.await();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return delegate.normalize(ctx, text, rv);
+                }
+
+                @Override
+                public String readResult(Pointer jref) {
+                    return delegate.readResult(jref);
+                }
+
+                @Override
+                public void destroyResult(Pointer jref) {
+                    delegate.destroyResult(jref);
+                }
+            };
+            NormalizationGuard guard = new NormalizationGuard(1024, OversizePolicy.TRUNCATE, 100L);
+            LognormFactory lognormFactory = new LognormFactory(
+                    new LibJavaLognorm.OptionsStruct(),
+                    "rule=:%all:rest%",
+                    false,
+                    blocking
+            ).withGuard(guard);
+            try (GuardedJavaLognorm guardedJavaLognorm = new GuardedJavaLognorm(lognormFactory, 1)) {
+                IllegalArgumentException e = Assertions
+                        .assertThrows(IllegalArgumentException.class, () -> guardedJavaLognorm.normalize("slow"));
+                Assertions.assertEquals("Normalization exceeded the deadline of 100 ms", e.getMessage());
+                Assertions.assertEquals(1, guard.timedOutMessages());
+                Assertions.assertEquals(1, guardedJavaLognorm.quarantinedContexts());
+                // Replacement context normalizes while the quarantined one is still blocked
+                Assertions.assertEquals("{ \"all\": \"fast\" }", guardedJavaLognorm.normalize("fast"));
+                Assertions
+                        .assertEquals(NormalizationGuard.TIMED_OUT, guardedJavaLognorm.tryNormalize("slow").returnCode());
+                Assertions.assertEquals(2, guardedJavaLognorm.quarantinedContexts());
+                unblock.countDown();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (guardedJavaLognorm.quarantinedContexts() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assertions.assertEquals(0, guardedJavaLognorm.quarantinedContexts());
+            }
+        });
+    }
+
+    @Test
+    public void replacementTest() {
+        assertDoesNotThrow(() -> {
+            CountDownLatch unblock = new CountDownLatch(1);
+            CountDownLatch replaced = new CountDownLatch(1);
+            LognormBinding delegate = new ProxyLognormBinding();
+            LognormBinding blocking = new LognormBinding() {
+
+                @Override
+                public Pointer normalize(Pointer ctx, String text, Pointer rv) {
+                    if ("slow".equals(text)) {
+                        try {
+                            unblock.await();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return delegate.normalize(ctx, text, rv);
+                }
+
+                @Override
+                public String readResult(Pointer jref) {
+                    return delegate.readResult(jref);
+                }
+
+                @Override
+                public void destroyResult(Pointer jref) {
+                    delegate.destroyResult(jref);
+                }
+            };
+            NormalizationGuard guard = new NormalizationGuard(1024, OversizePolicy.TRUNCATE, 100L);
+            LognormFactory lognormFactory = new LognormFactory(
+                    new LibJavaLognorm.OptionsStruct(),
+                    "rule=:%all:rest%",
+                    false,
+                    blocking
+            ).withGuard(guard);
+            AtomicInteger contexts = new AtomicInteger();
+            // Source whose replacement context is slow to build, the first context is built by the constructor
+            LognormSource slowSource = () -> {
+                if (contexts.incrementAndGet() > 1) {
+                    try {
+                        replaced.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return lognormFactory.lognorm();
+            };
+            try (GuardedJavaLognorm guardedJavaLognorm = new GuardedJavaLognorm(slowSource, guard, 1)) {
+                long start = System.nanoTime();
+                Assertions
+                        .assertEquals(NormalizationGuard.TIMED_OUT, guardedJavaLognorm.tryNormalize("slow").returnCode());
+                // The caller does not wait for the replacement context
+                Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+                // No worker is idle while the replacement is built, the call times out instead of waiting for one
+                IllegalArgumentException e = Assertions
+                        .assertThrows(IllegalArgumentException.class, () -> guardedJavaLognorm.normalize("fast"));
+                Assertions.assertEquals("Normalization exceeded the deadline of 100 ms", e.getMessage());
+                Assertions.assertEquals(2, guard.timedOutMessages());
+                replaced.countDown();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                String result = "";
+                while (!"{ \"all\": \"fast\" }".equals(result) && System.nanoTime() < deadline) {
+                    result = guardedJavaLognorm.tryNormalize("fast").result();
+                }
+                Assertions.assertEquals("{ \"all\": \"fast\" }", result);
+                unblock.countDown();
+            }
+        });
+    }
+}
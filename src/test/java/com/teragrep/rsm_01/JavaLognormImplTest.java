@@ -48,6 +48,12 @@ package com.teragrep.rsm_01;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class JavaLognormImplTest {
@@ -92,6 +98,220 @@ class JavaLognormImplTest {
         });
     }
 
+    @Test
+    public void tryNormalizeTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                NormalizationResult result = javaLognormImpl.tryNormalize("offline");
+                Assertions.assertTrue(result.isSuccess());
+                Assertions.assertEquals(0, result.returnCode());
+                Assertions.assertEquals("{ \"all\": \"offline\" }", result.result());
+                Assertions.assertEquals("", result.unparsedData());
+                Assertions.assertEquals(-1, result.unparsedPosition());
+                Assertions.assertEquals(0, javaLognormImpl.failures());
+            }
+        });
+    }
+
+    @Test
+    public void tryNormalizeFailureTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                NormalizationResult result = javaLognormImpl.tryNormalize("unparseable");
+                Assertions.assertFalse(result.isSuccess());
+                Assertions.assertEquals(-1000, result.returnCode());
+                Assertions.assertEquals("unparseable", result.unparsedData());
+                Assertions.assertEquals(0, result.unparsedPosition());
+                Assertions.assertTrue(result.result().contains("\"unparsed-data\": \"unparseable\""));
+                javaLognormImpl.normalizeBatch(new String[] {
+                        "Quantity: 1", "unparseable"
+                }, new String[2]);
+                Assertions.assertEquals(2, javaLognormImpl.failures());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeByteBufferTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                byte[] message = "offline".getBytes(StandardCharsets.UTF_8);
+                ByteBuffer in = ByteBuffer.allocateDirect(message.length);
+                in.put(message).flip();
+                ByteBuffer out = ByteBuffer.allocateDirect(64);
+                int length = javaLognormImpl.normalize(in, out);
+                out.flip();
+                byte[] result = new byte[out.remaining()];
+                out.get(result);
+                Assertions.assertEquals(length, result.length);
+                Assertions.assertEquals("{ \"all\": \"offline\" }", new String(result, StandardCharsets.UTF_8));
+                Assertions.assertFalse(in.hasRemaining());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeByteBufferCapacityTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                byte[] message = "offline".getBytes(StandardCharsets.UTF_8);
+                ByteBuffer in = ByteBuffer.allocateDirect(message.length);
+                in.put(message).flip();
+                ByteBuffer out = ByteBuffer.allocateDirect(4);
+                int length = javaLognormImpl.normalize(in, out);
+                // Required capacity is returned as a negative number and the buffers are left untouched
+                Assertions.assertEquals(-"{ \"all\": \"offline\" }".length(), length);
+                Assertions.assertEquals(0, out.position());
+                Assertions.assertEquals(0, in.position());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeByteBufferFailureTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:on%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                byte[] message = "offline trailing bytes".getBytes(StandardCharsets.UTF_8);
+                ByteBuffer in = ByteBuffer.allocateDirect(message.length);
+                in.put(message).flip();
+                in.limit("offline".length());
+                ByteBuffer out = ByteBuffer.allocateDirect(256);
+                IllegalArgumentException e = Assertions
+                        .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize(in, out));
+                Assertions
+                        .assertEquals(
+                                "ln_normalize() failed to perform extraction with error code: -1000. Generated error information: { \"originalmsg\": \"offline\", \"unparsed-data\": \"offline\" }",
+                                e.getMessage()
+                        );
+                // The error information written to the output buffer holds only the bytes up to the limit
+                byte[] result = new byte[out.capacity()];
+                out.get(result);
+                String error = new String(result, StandardCharsets.UTF_8).trim();
+                Assertions.assertEquals("{ \"originalmsg\": \"offline\", \"unparsed-data\": \"offline\" }", error);
+                Assertions.assertEquals(0, in.position());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeReusableTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals(0, javaLognormImpl.normalizeReusable("offline \u00e4\u20ac\ud83d\ude00"));
+                Assertions
+                        .assertEquals(
+                                "{ \"all\": \"offline \u00e4\u20ac\ud83d\ude00\" }",
+                                StandardCharsets.UTF_8.decode(javaLognormImpl.reusableResult()).toString()
+                        );
+                // Buffers grow to fit messages and results larger than their initial capacity
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 10000; i++) {
+                    text.append('x');
+                }
+                Assertions.assertEquals(0, javaLognormImpl.normalizeReusable(text));
+                Assertions.assertEquals(text.length() + 13, javaLognormImpl.reusableResult().remaining());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeReusableFailureTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:on%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals(0, javaLognormImpl.normalizeReusable("online with a long secret tail"));
+                Assertions.assertNotEquals(0, javaLognormImpl.normalizeReusable("off"));
+                // Error information holds only the failed message, not bytes of the previous longer message
+                Assertions
+                        .assertEquals(
+                                "{ \"originalmsg\": \"off\", \"unparsed-data\": \"off\" }",
+                                StandardCharsets.UTF_8.decode(javaLognormImpl.reusableResult()).toString()
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void normalizeReusableAllocationTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                StringBuilder matching = new StringBuilder("Quantity: 42");
+                StringBuilder unmatched = new StringBuilder("unparseable");
+                // Grow the buffers and let the JIT compile the path
+                for (int i = 0; i < 20000; i++) {
+                    javaLognormImpl.normalizeReusable(matching);
+                    javaLognormImpl.normalizeReusable(unmatched);
+                }
+                com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory
+                        .getThreadMXBean();
+                long thread = Thread.currentThread().getId();
+                long before = threadMXBean.getThreadAllocatedBytes(thread);
+                for (int i = 0; i < 10000; i++) {
+                    javaLognormImpl.normalizeReusable(matching);
+                    javaLognormImpl.normalizeReusable(unmatched);
+                }
+                long allocated = threadMXBean.getThreadAllocatedBytes(thread) - before;
+                // Less than a byte per message leaves room only for the measurement itself
+                Assertions.assertTrue(allocated < 20000, "allocated " + allocated + " bytes for 20000 messages");
+            }
+        });
+    }
+
+    @Test
+    public void normalizeBatchTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                List<String> s = javaLognormImpl.normalizeBatch(Arrays.asList("offline", "online"));
+                Assertions.assertEquals(Arrays.asList("{ \"all\": \"offline\" }", "{ \"all\": \"online\" }"), s);
+            }
+        });
+    }
+
+    @Test
+    public void normalizeBatchExceptionTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                IllegalArgumentException e = Assertions
+                        .assertThrows(
+                                IllegalArgumentException.class,
+                                () -> javaLognormImpl.normalizeBatch(Arrays.asList("Quantity: 1", "unparseable"))
+                        );
+                Assertions
+                        .assertEquals(
+                                "ln_normalize() failed to perform extraction with error code: -1000 for message at index: 1",
+                                e.getMessage()
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void normalizeBatchReturnCodesTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                String[] out = new String[2];
+                int[] rvs = javaLognormImpl.normalizeBatch(new String[] {
+                        "Quantity: 1", "unparseable"
+                }, out);
+                Assertions.assertArrayEquals(new int[] {
+                        0, -1000
+                }, rvs);
+                Assertions.assertTrue(out[0].contains("\"N\": \"1\""));
+                Assertions.assertNotNull(out[1]);
+            }
+        });
+    }
+
     @Test
     public void closeTest() {
         assertDoesNotThrow(() -> {
@@ -0,0 +1,149 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class LiteralPrefilterTest {
+
+    @Test
+    public void rejectTest() {
+        LiteralPrefilter prefilter = LiteralPrefilter
+                .of("rule=tag1:Quantity: %N:number%\nrule=tag2:Quality: %Q:word%\nrule=:100%% done");
+        Assertions.assertTrue(prefilter.isFiltering());
+        Assertions.assertEquals(-1, prefilter.reject("Quantity: 1"));
+        Assertions.assertEquals(-1, prefilter.reject("Quality: good"));
+        Assertions.assertEquals(-1, prefilter.reject("100% done"));
+        Assertions.assertEquals(0, prefilter.reject("unparseable"));
+        Assertions.assertEquals(0, prefilter.reject(""));
+        // "Qua" is shared by two rules and parsed before the rules branch
+        Assertions.assertEquals(3, prefilter.reject("Quack"));
+        Assertions.assertEquals(3, prefilter.reject("Quantum"));
+        Assertions.assertEquals(3, prefilter.reject("Qua"));
+    }
+
+    @Test
+    public void prefixTest() {
+        LiteralPrefilter prefilter = LiteralPrefilter.of("prefix=host \nrule=:Quantity: %N:number%");
+        Assertions.assertEquals(-1, prefilter.reject("host Quantity: 1"));
+        Assertions.assertEquals(0, prefilter.reject("Quantity: 1"));
+    }
+
+    @Test
+    public void extendPrefixTest() {
+        LiteralPrefilter prefilter = LiteralPrefilter
+                .of(
+                        "version=2\n# comment\nprefix=host \nextendprefix=app: \nrule=:Quantity: %N:number%\n\nprefix=\nrule=:Quality: %Q:word%"
+                );
+        Assertions.assertTrue(prefilter.isFiltering());
+        Assertions.assertEquals(-1, prefilter.reject("host app: Quantity: 1"));
+        Assertions.assertEquals(-1, prefilter.reject("Quality: good"));
+        Assertions.assertEquals(0, prefilter.reject("host Quantity: 1"));
+        Assertions.assertEquals(0, prefilter.reject("app: Quantity: 1"));
+        // Field in the extended prefix makes every rule after it start with a field
+        Assertions
+                .assertFalse(LiteralPrefilter.of("prefix=\nextendprefix=%host:word% \nrule=:a %all:rest%").isFiltering());
+    }
+
+    @Test
+    public void unrecognizedLineTest() {
+        Assertions.assertFalse(LiteralPrefilter.of("rule=:a %all:rest%\n rule=:b %all:rest%").isFiltering());
+        Assertions.assertFalse(LiteralPrefilter.of("rule=:a %all:rest%\nunknown=b").isFiltering());
+        Assertions.assertFalse(LiteralPrefilter.of("rule=:a %all:rest%\nrule=malformed").isFiltering());
+        Assertions.assertFalse(LiteralPrefilter.of("rule=:a %all:rest%\n \nrule=:b %all:rest%").isFiltering());
+    }
+
+    @Test
+    public void acceptAllTest() {
+        Assertions.assertFalse(LiteralPrefilter.of("rule=:%all:rest%").isFiltering());
+        Assertions.assertFalse(LiteralPrefilter.of("include=other.rulebase\nrule=:a%all:rest%").isFiltering());
+        Assertions.assertFalse(LiteralPrefilter.acceptAll().isFiltering());
+        Assertions.assertEquals(-1, LiteralPrefilter.acceptAll().reject("anything"));
+    }
+
+    @Test
+    public void errorResultTest() {
+        Assertions
+                .assertEquals(
+                        "{ \"originalmsg\": \"a\\\"b\\/c\\n\", \"unparsed-data\": \"c\\n\" }",
+                        LiteralPrefilter.errorResult("a\"b/c\n", 4)
+                );
+    }
+
+    @Test
+    public void sameResultAsLiblognormTest() {
+        assertDoesNotThrow(() -> {
+            String rulebase = "rule=tag1:Quantity: %N:number%\nrule=tag2:Quality: %Q:word%";
+            LognormFactory lognormFactory = new LognormFactory(rulebase);
+            LognormFactory prefiltered = lognormFactory.withPrefilter();
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    JavaLognormImpl prefilteredImpl = prefiltered.lognorm()
+            ) {
+                for (String message : new String[] {
+                        "unparseable", "Quack", "Quantity: 1", "Quality: good", ""
+                }) {
+                    NormalizationResult expected = javaLognormImpl.tryNormalize(message);
+                    NormalizationResult actual = prefilteredImpl.tryNormalize(message);
+                    Assertions.assertEquals(expected.returnCode(), actual.returnCode(), message);
+                    Assertions.assertEquals(expected.result(), actual.result(), message);
+                    Assertions.assertEquals(expected.unparsedData(), actual.unparsedData(), message);
+                }
+                String[] out = new String[3];
+                int[] rvs = prefilteredImpl.normalizeBatch(new String[] {
+                        "unparseable", "Quantity: 1", "Quack"
+                }, out);
+                Assertions.assertArrayEquals(new int[] {
+                        -1000, 0, -1000
+                }, rvs);
+                Assertions.assertTrue(out[1].contains("\"N\": \"1\""));
+            }
+        });
+    }
+}
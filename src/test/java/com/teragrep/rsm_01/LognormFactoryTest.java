@@ -49,6 +49,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 
@@ -193,4 +194,88 @@ public class LognormFactoryTest {
         });
     }
 
+    @Test
+    public void directBindingTest() {
+        assertDoesNotThrow(() -> {
+            LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+            LognormFactory lognormFactory = new LognormFactory(
+                    opts,
+                    "rule=:%all:rest%",
+                    false,
+                    new DirectLognormBinding()
+            );
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+            }
+        });
+    }
+
+    @Test
+    public void directBindingExceptionTest() {
+        assertDoesNotThrow(() -> {
+            LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+            LognormFactory lognormFactory = new LognormFactory(
+                    opts,
+                    "rule=tag1:Quantity: %N:number%",
+                    false,
+                    new DirectLognormBinding()
+            );
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                IllegalArgumentException e = Assertions
+                        .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize("unparseable"));
+                Assertions
+                        .assertEquals(
+                                "ln_normalize() failed to perform extraction with error code: -1000", e.getMessage()
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void projectionTest() {
+        assertDoesNotThrow(() -> {
+            LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+            opts.CTXOPT_ADD_ORIGINALMSG = true;
+            opts.CTXOPT_ADD_RULE = true;
+            LognormFactory lognormFactory = new LognormFactory(opts, "rule=:%a:word% %b:word% %c:rest%")
+                    .withProjection(Arrays.asList(Arrays.asList("c"), Arrays.asList("metadata", "rule", "mockup"), Arrays.asList("missing")));
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions
+                        .assertEquals(
+                                "{ \"c\": \"three\", \"metadata\": { \"rule\": { \"mockup\": \"%a:word% %b:word% %c:rest%\" } } }",
+                                javaLognormImpl.normalize("one two three")
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void projectionSharedTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%a:word% %b:rest%").withProjection("b");
+            try (
+                    CompiledRulebase compiledRulebase = lognormFactory.compile();
+                    JavaLognormImpl javaLognormImpl = compiledRulebase.lognorm()
+            ) {
+                Assertions.assertEquals("{ \"b\": \"two\" }", javaLognormImpl.normalize("one two"));
+                String[] out = new String[1];
+                javaLognormImpl.normalizeBatch(new String[] {
+                        "one two"
+                }, out);
+                Assertions.assertEquals("{ \"b\": \"two\" }", out[0]);
+            }
+        });
+    }
+
+    @Test
+    public void projectionErrorTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%").withProjection("N");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                // Error information is not pruned
+                NormalizationResult result = javaLognormImpl.tryNormalize("unparseable");
+                Assertions.assertEquals("unparseable", result.unparsedData());
+            }
+        });
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class LognormMetricsTest {
+
+    @Test
+    public void metricsTest() {
+        assertDoesNotThrow(() -> {
+            LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+            opts.CTXOPT_ADD_RULE = true;
+            LognormMetrics metrics = new LognormMetrics();
+            LognormFactory lognormFactory = new LognormFactory(
+                    opts,
+                    "rule=:Quantity: %N:number%",
+                    false,
+                    new ProxyLognormBinding(),
+                    metrics
+            );
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals(1, metrics.getLiveContexts());
+                Assertions.assertEquals(1, metrics.getContextsBuilt());
+                javaLognormImpl.normalize("Quantity: 1");
+                javaLognormImpl.tryNormalize("Quantity: 2");
+                javaLognormImpl.tryNormalize("unparseable");
+                javaLognormImpl.normalizeBatch(new String[] {
+                        "Quantity: 3", "unparseable"
+                }, new String[2]);
+            }
+            Assertions.assertEquals(0, metrics.getLiveContexts());
+            Assertions.assertEquals(5, metrics.getMessagesNormalized());
+            Assertions.assertEquals(3, metrics.getMessagesSucceeded());
+            Assertions.assertEquals(2, metrics.getMessagesFailed());
+            Assertions.assertEquals(3, Arrays.stream(metrics.getLatencyHistogram()).sum());
+            Assertions.assertEquals(Collections.singletonMap("Quantity: %N:number%", 2L), metrics.getRuleHits());
+        });
+    }
+
+    @Test
+    public void disabledTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                javaLognormImpl.normalize("offline");
+            }
+            LognormMetrics metrics = lognormFactory.metrics();
+            Assertions.assertFalse(metrics.isEnabled());
+            Assertions.assertEquals(0, metrics.getMessagesNormalized());
+            Assertions.assertEquals(0, metrics.getContextsBuilt());
+        });
+    }
+
+    @Test
+    public void latencyHistogramTest() {
+        LognormMetrics metrics = new LognormMetrics();
+        metrics.normalized(System.nanoTime(), true);
+        long[] histogram = metrics.getLatencyHistogram();
+        long[] bounds = metrics.getLatencyBucketBoundsNanos();
+        Assertions.assertEquals(bounds.length, histogram.length);
+        Assertions.assertEquals(1024, bounds[0]);
+        Assertions.assertEquals(2048, bounds[1]);
+        Assertions.assertEquals(1, Arrays.stream(histogram).sum());
+        metrics.reset();
+        Assertions.assertEquals(0, Arrays.stream(metrics.getLatencyHistogram()).sum());
+        Assertions.assertEquals(0, metrics.getMessagesNormalized());
+    }
+
+    @Test
+    public void registerTest() {
+        LognormMetrics metrics = new LognormMetrics();
+        metrics.messages(2, 1);
+        ObjectName objectName = metrics.register("registerTest");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assertions
+                    .assertEquals(2L, assertDoesNotThrow(() -> server.getAttribute(objectName, "MessagesNormalized")));
+            Assertions.assertEquals(1L, assertDoesNotThrow(() -> server.getAttribute(objectName, "MessagesFailed")));
+        }
+        finally {
+            metrics.unregister("registerTest");
+        }
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
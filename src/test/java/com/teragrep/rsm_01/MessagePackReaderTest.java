@@ -0,0 +1,187 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class MessagePackReaderTest {
+
+    @Test
+    public void readTest() {
+        byte[] bytes = new byte[] {
+                (byte) 0x86, // map of 6
+                (byte) 0xa1,
+                'a',
+                (byte) 0xa7,
+                'o',
+                'f',
+                'f',
+                'l',
+                'i',
+                'n',
+                'e', // "a": "offline"
+                (byte) 0xa1,
+                'b',
+                0x05, // "b": 5
+                (byte) 0xa1,
+                'c',
+                (byte) 0xff, // "c": -1
+                (byte) 0xa1,
+                'd',
+                (byte) 0xcd,
+                0x01,
+                0x00, // "d": 256
+                (byte) 0xa1,
+                'e',
+                (byte) 0x92,
+                (byte) 0xc3,
+                (byte) 0xc0, // "e": [true, null]
+                (byte) 0xa1,
+                'f',
+                (byte) 0xcb,
+                0x3f,
+                (byte) 0xf8,
+                0,
+                0,
+                0,
+                0,
+                0,
+                0 // "f": 1.5
+        };
+        MessagePackReader reader = new MessagePackReader(bytes);
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("a", "offline");
+        expected.put("b", 5L);
+        expected.put("c", -1L);
+        expected.put("d", 256L);
+        expected.put("e", Arrays.asList(true, null));
+        expected.put("f", 1.5);
+        Assertions.assertEquals(expected, reader.nextMap());
+        Assertions.assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void truncatedTest() {
+        MessagePackReader reader = new MessagePackReader(new byte[] {
+                (byte) 0xa5, 'a'
+        });
+        Assertions.assertThrows(IllegalArgumentException.class, reader::next);
+    }
+
+    @Test
+    public void normalizeMessagePackTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%")
+                    .withResultFormat(ResultFormat.MESSAGEPACK);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                byte[] bytes = javaLognormImpl.normalizeBytes("offline");
+                Assertions.assertEquals(13, bytes.length); // { "all": "offline" } is 20 bytes as JSON
+                Map<String, Object> result = new MessagePackReader(bytes).nextMap();
+                Assertions.assertEquals("offline", result.get("all"));
+                // Results returned as Strings are still JSON
+                Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+            }
+        });
+    }
+
+    @Test
+    public void normalizeLargeMessagePackTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%")
+                    .withResultFormat(ResultFormat.MESSAGEPACK);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                char[] chars = new char[10000];
+                Arrays.fill(chars, 'x');
+                String message = new String(chars);
+                // Larger than the initial result buffer
+                Map<String, Object> result = new MessagePackReader(javaLognormImpl.normalizeBytes(message)).nextMap();
+                Assertions.assertEquals(message, result.get("all"));
+            }
+        });
+    }
+
+    @Test
+    public void normalizeJsonBytesTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                byte[] bytes = javaLognormImpl.normalizeBytes("offline");
+                Assertions.assertEquals("{ \"all\": \"offline\" }", new String(bytes, StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    @Test
+    public void normalizeLargeJsonBytesTest() {
+        assertDoesNotThrow(() -> {
+            LognormMetrics metrics = new LognormMetrics();
+            LognormFactory lognormFactory = new LognormFactory(
+                    new LibJavaLognorm.OptionsStruct(),
+                    "rule=:%all:rest%",
+                    false,
+                    new ProxyLognormBinding(),
+                    metrics
+            );
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                char[] chars = new char[10000];
+                Arrays.fill(chars, 'x');
+                String message = new String(chars);
+                byte[] bytes = javaLognormImpl.normalizeBytes(message);
+                Assertions.assertEquals("{ \"all\": \"" + message + "\" }", new String(bytes, StandardCharsets.UTF_8));
+                // Growing the result buffer does not normalize the message again
+                Assertions.assertEquals(1, metrics.getMessagesNormalized());
+            }
+        });
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+class NativeLibraryLoaderTest {
+
+    @Test
+    public void extractTest(@TempDir File directory) throws Exception {
+        File bundled = new File(directory, "bundled.so");
+        Files.write(bundled.toPath(), "library".getBytes(StandardCharsets.UTF_8));
+        File cache = new File(directory, "cache");
+
+        File extracted = NativeLibraryLoader.extract(bundled.toURI().toURL(), "libJavaLognorm.so", cache);
+        Assertions.assertTrue(extracted.getName().endsWith("-libJavaLognorm.so"));
+        Assertions.assertEquals("library", new String(Files.readAllBytes(extracted.toPath()), StandardCharsets.UTF_8));
+        long modified = extracted.lastModified();
+
+        // Identical library is reused from the cache
+        Assertions
+                .assertEquals(extracted, NativeLibraryLoader.extract(bundled.toURI().toURL(), "libJavaLognorm.so", cache));
+        Assertions.assertEquals(modified, extracted.lastModified());
+
+        // Changed library is extracted next to the old one
+        Files.write(bundled.toPath(), "library2".getBytes(StandardCharsets.UTF_8));
+        File changed = NativeLibraryLoader.extract(bundled.toURI().toURL(), "libJavaLognorm.so", cache);
+        Assertions.assertNotEquals(extracted, changed);
+        Assertions.assertEquals(2, cache.list().length);
+    }
+
+    @Test
+    public void tamperedLibraryTest(@TempDir File directory) throws Exception {
+        File bundled = new File(directory, "bundled.so");
+        Files.write(bundled.toPath(), "library".getBytes(StandardCharsets.UTF_8));
+        File cache = new File(directory, "cache");
+        File extracted = NativeLibraryLoader.extract(bundled.toURI().toURL(), "libJavaLognorm.so", cache);
+        Assertions
+                .assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(cache.toPath()));
+
+        // File of the same length with different content is replaced with the bundled library
+        Files.write(extracted.toPath(), "LIBRARY".getBytes(StandardCharsets.UTF_8));
+        Assertions
+                .assertEquals(extracted, NativeLibraryLoader.extract(bundled.toURI().toURL(), "libJavaLognorm.so", cache));
+        Assertions.assertEquals("library", new String(Files.readAllBytes(extracted.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void sharedDirectoryTest(@TempDir File directory) throws Exception {
+        File bundled = new File(directory, "bundled.so");
+        Files.write(bundled.toPath(), "library".getBytes(StandardCharsets.UTF_8));
+        File cache = new File(directory, "cache");
+        Files.createDirectory(cache.toPath());
+        Files.setPosixFilePermissions(cache.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+        // Directory writable by other users is not used
+        Assertions
+                .assertThrows(
+                        IOException.class,
+                        () -> NativeLibraryLoader.extract(bundled.toURI().toURL(), "libJavaLognorm.so", cache)
+                );
+        Assertions.assertEquals(0, cache.list().length);
+    }
+}
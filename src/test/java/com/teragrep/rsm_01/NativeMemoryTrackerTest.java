@@ -0,0 +1,166 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class NativeMemoryTrackerTest {
+
+    @Test
+    public void contextAccountingTest() {
+        assertDoesNotThrow(() -> {
+            NativeMemoryTracker tracker = NativeMemoryTracker.global();
+            long contexts = tracker.contexts();
+            long results = tracker.results();
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+            Assertions.assertEquals(contexts + 1, tracker.contexts());
+            try (NormalizedRecord record = javaLognormImpl.normalizeRecord("offline")) {
+                Assertions.assertEquals(results + 1, tracker.results());
+                Assertions.assertEquals("offline", record.getString("all"));
+            }
+            Assertions.assertEquals(results, tracker.results());
+            javaLognormImpl.close();
+            javaLognormImpl.close(); // Closing again does not discard the context twice
+            Assertions.assertEquals(contexts, tracker.contexts());
+        });
+    }
+
+    @Test
+    public void leakedContextTest() {
+        assertDoesNotThrow(() -> {
+            NativeMemoryTracker tracker = NativeMemoryTracker.global();
+            long leaked = tracker.leakedResources();
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            lognormFactory.lognorm().normalize("offline"); // Never closed
+            awaitLeaked(tracker, leaked + 1);
+        });
+    }
+
+    @Test
+    public void leakedContextMetricsTest() {
+        assertDoesNotThrow(() -> {
+            NativeMemoryTracker tracker = NativeMemoryTracker.global();
+            long leaked = tracker.leakedResources();
+            LognormMetrics metrics = new LognormMetrics();
+            LognormFactory lognormFactory = new LognormFactory(
+                    new LibJavaLognorm.OptionsStruct(),
+                    "rule=:%all:rest%",
+                    false,
+                    new ProxyLognormBinding(),
+                    metrics
+            );
+            lognormFactory.lognorm().normalize("offline"); // Never closed
+            Assertions.assertEquals(1, metrics.getLiveContexts());
+            awaitLeaked(tracker, leaked + 1);
+            // Context freed in the background is no longer counted as live
+            long deadline = System.currentTimeMillis() + 10000;
+            while (metrics.getLiveContexts() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(0, metrics.getLiveContexts());
+        });
+    }
+
+    @Test
+    public void releaseTest() {
+        NativeMemoryTracker tracker = NativeMemoryTracker.global();
+        long bytes = tracker.resultBytes();
+        AtomicInteger freed = new AtomicInteger();
+        Object owner = new Object();
+        NativeResource resource = new TestResource(owner, freed);
+        Assertions.assertEquals(bytes + 100, tracker.resultBytes());
+        Assertions.assertEquals(0, resource.release());
+        Assertions.assertEquals(0, resource.release());
+        Assertions.assertEquals(1, freed.get());
+        Assertions.assertTrue(resource.isReleased());
+        Assertions.assertEquals(bytes, tracker.resultBytes());
+    }
+
+    @Test
+    public void reapTest() throws InterruptedException {
+        NativeMemoryTracker tracker = NativeMemoryTracker.global();
+        long leaked = tracker.leakedResources();
+        AtomicInteger freed = new AtomicInteger();
+        new TestResource(new Object(), freed); // Owner is unreachable right away
+        awaitLeaked(tracker, leaked + 1);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (freed.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, freed.get());
+    }
+
+    private static void awaitLeaked(NativeMemoryTracker tracker, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (tracker.leakedResources() < expected && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(tracker.leakedResources() >= expected);
+    }
+
+    private static final class TestResource extends NativeResource {
+
+        private final AtomicInteger freed;
+
+        private TestResource(Object owner, AtomicInteger freed) {
+            super(owner, false, 100);
+            this.freed = freed;
+        }
+
+        @Override
+        protected int free() {
+            freed.incrementAndGet();
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class NdjsonNormalizerTest {
+
+    @Test
+    public void normalizeStreamTest() {
+        assertDoesNotThrow(() -> {
+            NdjsonNormalizer ndjsonNormalizer = new NdjsonNormalizer(new LognormFactory("rule=:%all:rest%"), 2);
+            byte[] input = "first\nsecond\r\nthird".getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            NormalizationReport report = ndjsonNormalizer.normalize(new ByteArrayInputStream(input), output);
+            Assertions
+                    .assertEquals(
+                            "{ \"all\": \"first\" }\n{ \"all\": \"second\" }\n{ \"all\": \"third\" }\n",
+                            output.toString("UTF-8")
+                    );
+            Assertions.assertEquals(3, report.lines());
+            Assertions.assertEquals(0, report.failedLines());
+            Assertions.assertEquals(input.length, report.bytes());
+        });
+    }
+
+    @Test
+    public void normalizeFailedLineTest() {
+        assertDoesNotThrow(() -> {
+            NdjsonNormalizer ndjsonNormalizer = new NdjsonNormalizer(
+                    new LognormFactory("rule=tag1:Quantity: %N:number%")
+            );
+            byte[] input = "Quantity: 1\nunparseable\n".getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            NormalizationReport report = ndjsonNormalizer.normalize(new ByteArrayInputStream(input), output);
+            String[] lines = output.toString("UTF-8").split("\n");
+            Assertions.assertEquals(2, lines.length);
+            Assertions.assertTrue(lines[0].contains("\"N\": \"1\""));
+            Assertions.assertTrue(lines[1].startsWith("{ \"rv\": -1000, \"line\": 2, \"error\": "));
+            Assertions.assertEquals(2, report.lines());
+            Assertions.assertEquals(1, report.failedLines());
+        });
+    }
+
+    @Test
+    public void normalizeFileTest(@TempDir Path tempDir) {
+        assertDoesNotThrow(() -> {
+            Path input = tempDir.resolve("input.log");
+            Files.write(input, "first\nsecond\n".getBytes(StandardCharsets.UTF_8));
+            NdjsonNormalizer ndjsonNormalizer = new NdjsonNormalizer(new LognormFactory("rule=:%all:rest%"));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            NormalizationReport report = ndjsonNormalizer.normalize(input, output);
+            Assertions.assertEquals("{ \"all\": \"first\" }\n{ \"all\": \"second\" }\n", output.toString("UTF-8"));
+            Assertions.assertEquals(2, report.lines());
+        });
+    }
+
+    @Test
+    public void normalizeGzipFileTest(@TempDir Path tempDir) {
+        assertDoesNotThrow(() -> {
+            Path input = tempDir.resolve("input.log.gz");
+            try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(input))) {
+                outputStream.write("first\nsecond\n".getBytes(StandardCharsets.UTF_8));
+            }
+            NdjsonNormalizer ndjsonNormalizer = new NdjsonNormalizer(new LognormFactory("rule=:%all:rest%"));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            NormalizationReport report = ndjsonNormalizer.normalize(input, output);
+            Assertions.assertEquals("{ \"all\": \"first\" }\n{ \"all\": \"second\" }\n", output.toString("UTF-8"));
+            Assertions.assertEquals(2, report.lines());
+            // Reported bytes are the decompressed bytes
+            Assertions.assertEquals(13, report.bytes());
+        });
+    }
+}
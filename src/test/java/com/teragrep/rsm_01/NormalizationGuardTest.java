@@ -0,0 +1,128 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+class NormalizationGuardTest {
+
+    @Test
+    public void truncateTest() {
+        NormalizationGuard guard = new NormalizationGuard(5, OversizePolicy.TRUNCATE, 0L);
+        Assertions.assertEquals("abc", guard.limit("abc"));
+        Assertions.assertEquals("abcde", guard.limit("abcdefgh"));
+        // Surrogate pair at the limit is dropped instead of split
+        Assertions.assertEquals("abcd", guard.limit("abcd\ud83d\ude00"));
+        Assertions.assertEquals(2, guard.truncatedMessages());
+        Assertions.assertEquals(0, guard.rejectedMessages());
+    }
+
+    @Test
+    public void truncateBytesTest() {
+        NormalizationGuard guard = new NormalizationGuard(5, OversizePolicy.TRUNCATE, 0L);
+        // "ab" followed by the three byte euro sign and a four byte emoji
+        ByteBuffer in = ByteBuffer.wrap("xab\u20ac\ud83d\ude00".getBytes(StandardCharsets.UTF_8));
+        in.position(1);
+        // Limit falls after the euro sign, in front of the emoji
+        Assertions.assertEquals(5, guard.allowedLength(in));
+        in.position(2);
+        // Limit falls inside the emoji, which is dropped instead of split
+        Assertions.assertEquals(4, guard.allowedLength(in));
+        in.position(6);
+        Assertions.assertEquals(4, guard.allowedLength(in));
+        Assertions.assertEquals(2, guard.truncatedMessages());
+    }
+
+    @Test
+    public void rejectTest() {
+        NormalizationGuard guard = new NormalizationGuard(5, OversizePolicy.REJECT, 0L);
+        Assertions.assertEquals("abcde", guard.limit("abcde"));
+        Assertions.assertNull(guard.limit("abcdefgh"));
+        Assertions.assertEquals(-1, guard.allowedLength(6));
+        Assertions.assertEquals(2, guard.rejectedMessages());
+        Assertions.assertEquals(0, guard.truncatedMessages());
+        Assertions
+                .assertThrows(IllegalArgumentException.class, () -> new NormalizationGuard(0, OversizePolicy.REJECT, 0L));
+        Assertions.assertFalse(NormalizationGuard.unbounded().isLimiting());
+    }
+
+    @Test
+    public void guardedFactoryTest() {
+        assertDoesNotThrow(() -> {
+            NormalizationGuard guard = new NormalizationGuard(12, OversizePolicy.REJECT, 0L);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%").withGuard(guard);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+                IllegalArgumentException e = Assertions
+                        .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize("offline offline"));
+                Assertions.assertEquals("Message of length 15 exceeds the maximum length of 12", e.getMessage());
+                NormalizationResult result = javaLognormImpl.tryNormalize("offline offline");
+                Assertions.assertEquals(NormalizationGuard.TOO_LONG, result.returnCode());
+                String[] out = new String[2];
+                int[] rvs = javaLognormImpl.normalizeBatch(new String[] {
+                        "offline offline", "online"
+                }, out);
+                Assertions.assertArrayEquals(new int[] {
+                        NormalizationGuard.TOO_LONG, 0
+                }, rvs);
+                Assertions.assertEquals("{ \"all\": \"online\" }", out[1]);
+                Assertions.assertEquals(3, guard.rejectedMessages());
+                Assertions.assertEquals(3, javaLognormImpl.failures());
+            }
+            NormalizationGuard truncating = new NormalizationGuard(7, OversizePolicy.TRUNCATE, 0L);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.withGuard(truncating).lognorm()) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline offline"));
+                Assertions.assertEquals(1, truncating.truncatedMessages());
+            }
+        });
+    }
+}
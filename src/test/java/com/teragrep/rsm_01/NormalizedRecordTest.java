@@ -0,0 +1,167 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class NormalizedRecordTest {
+
+    @Test
+    public void getStringTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    NormalizedRecord record = javaLognormImpl.normalizeRecord("offline")
+            ) {
+                Assertions.assertTrue(record.contains("all"));
+                Assertions.assertEquals("offline", record.getString("all"));
+                Assertions.assertEquals("{ \"all\": \"offline\" }", record.toJson());
+            }
+        });
+    }
+
+    @Test
+    public void getLongTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:Quantity: %N:number%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    NormalizedRecord record = javaLognormImpl.normalizeRecord("Quantity: 42")
+            ) {
+                Assertions.assertEquals(42L, record.getLong("N"));
+                Assertions.assertEquals(42.0, record.getDouble("N"));
+            }
+        });
+    }
+
+    @Test
+    public void getLongNotNumberTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    NormalizedRecord record = javaLognormImpl.normalizeRecord("offline")
+            ) {
+                NumberFormatException e = Assertions
+                        .assertThrows(NumberFormatException.class, () -> record.getLong("all"));
+                Assertions.assertEquals("Field <all> does not hold an integer", e.getMessage());
+            }
+        });
+    }
+
+    @Test
+    public void nestedPathTest() {
+        assertDoesNotThrow(() -> {
+            LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+            opts.CTXOPT_ADD_RULE = true;
+            LognormFactory lognormFactory = new LognormFactory(opts, "rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    NormalizedRecord record = javaLognormImpl.normalizeRecord("offline")
+            ) {
+                Assertions.assertEquals(Arrays.asList("all", "metadata"), record.fieldNames());
+                Assertions.assertTrue(record.isObject("metadata"));
+                Assertions.assertEquals(Arrays.asList("rule"), record.fieldNames("metadata"));
+                Assertions.assertEquals("%all:rest%", record.getString("metadata", "rule", "mockup"));
+            }
+        });
+    }
+
+    @Test
+    public void missingFieldTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    NormalizedRecord record = javaLognormImpl.normalizeRecord("offline")
+            ) {
+                Assertions.assertFalse(record.contains("missing"));
+                Assertions.assertFalse(record.contains("all", "nested"));
+                NoSuchElementException e = Assertions
+                        .assertThrows(NoSuchElementException.class, () -> record.getString("missing"));
+                Assertions.assertEquals("Field <missing> does not exist", e.getMessage());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeRecordExceptionTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                IllegalArgumentException e = Assertions
+                        .assertThrows(
+                                IllegalArgumentException.class, () -> javaLognormImpl.normalizeRecord("unparseable")
+                        );
+                Assertions
+                        .assertEquals(
+                                "ln_normalize() failed to perform extraction with error code: -1000", e.getMessage()
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void closeTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                NormalizedRecord record = javaLognormImpl.normalizeRecord("offline");
+                record.close();
+                IllegalStateException e = Assertions
+                        .assertThrows(IllegalStateException.class, () -> record.getString("all"));
+                Assertions.assertEquals("NormalizedRecord is closed", e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class ParallelNormalizerTest {
+
+    @Test
+    public void normalizeBatchTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (ParallelNormalizer parallelNormalizer = new ParallelNormalizer(lognormFactory, 4, 10)) {
+                String[] texts = IntStream.range(0, 1000).mapToObj(i -> "message" + i).toArray(String[]::new);
+                String[] out = new String[texts.length];
+                int[] rvs = parallelNormalizer.normalizeBatch(texts, out);
+                for (int i = 0; i < texts.length; i++) {
+                    Assertions.assertEquals(0, rvs[i]);
+                    Assertions.assertEquals("{ \"all\": \"message" + i + "\" }", out[i]);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void normalizeOrderedStreamTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    CompiledRulebase compiledRulebase = lognormFactory.compile();
+                    ParallelNormalizer parallelNormalizer = new ParallelNormalizer(compiledRulebase, 4, 10)
+            ) {
+                List<BulkResult> results = parallelNormalizer
+                        .normalize(IntStream.range(0, 1000).mapToObj(i -> "message" + i), true)
+                        .collect(Collectors.toList());
+                Assertions.assertEquals(1000, results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    Assertions.assertEquals(i, results.get(i).index());
+                    Assertions.assertEquals("{ \"all\": \"message" + i + "\" }", results.get(i).result());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void normalizeUnorderedStreamTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (ParallelNormalizer parallelNormalizer = new ParallelNormalizer(lognormFactory, 4, 10)) {
+                List<BulkResult> results = parallelNormalizer
+                        .normalize(IntStream.range(0, 1000).mapToObj(i -> "message" + i), false)
+                        .collect(Collectors.toList());
+                Assertions.assertEquals(1000, results.size());
+                // Every message is normalized exactly once, in any order
+                Assertions.assertEquals(1000, results.stream().mapToLong(BulkResult::index).distinct().count());
+                for (BulkResult result : results) {
+                    Assertions.assertEquals("{ \"all\": \"message" + result.index() + "\" }", result.result());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void normalizeFailureTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (ParallelNormalizer parallelNormalizer = new ParallelNormalizer(lognormFactory, 2, 1)) {
+                String[] texts = new String[] {
+                        "Quantity: 1", "unparseable"
+                };
+                String[] out = new String[texts.length];
+                int[] rvs = parallelNormalizer.normalizeBatch(texts, out);
+                Assertions.assertEquals(0, rvs[0]);
+                Assertions.assertEquals(-1000, rvs[1]);
+            }
+        });
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class PooledJavaLognormTest {
+
+    @Test
+    public void normalizeTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (PooledJavaLognorm pooledJavaLognorm = new PooledJavaLognorm(lognormFactory, 2, 60000L)) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", pooledJavaLognorm.normalize("offline"));
+                // Context is returned to the pool after use
+                Assertions.assertEquals(1, pooledJavaLognorm.idleContexts());
+            }
+        });
+    }
+
+    @Test
+    public void warmupTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (PooledJavaLognorm pooledJavaLognorm = new PooledJavaLognorm(lognormFactory, 3, 60000L)) {
+                pooledJavaLognorm.warmup(Arrays.asList("Quantity: 1", "unparseable"), 10);
+                // Every context of the pool is created and returned
+                Assertions.assertEquals(3, pooledJavaLognorm.idleContexts());
+                pooledJavaLognorm.warmup();
+                Assertions.assertEquals(3, pooledJavaLognorm.idleContexts());
+            }
+        });
+    }
+
+    @Test
+    public void concurrentNormalizeTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            ExecutorService executorService = Executors.newFixedThreadPool(8);
+            try (PooledJavaLognorm pooledJavaLognorm = new PooledJavaLognorm(lognormFactory, 4, 60000L)) {
+                List<Future<String>> futures = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    String message = "message" + i;
+                    futures.add(executorService.submit(() -> pooledJavaLognorm.normalize(message)));
+                }
+                for (int i = 0; i < 1000; i++) {
+                    Assertions.assertEquals("{ \"all\": \"message" + i + "\" }", futures.get(i).get());
+                }
+                // Pool never creates more contexts than its size
+                Assertions.assertTrue(pooledJavaLognorm.idleContexts() <= 4);
+            }
+            finally {
+                executorService.shutdown();
+            }
+        });
+    }
+
+    @Test
+    public void unreachablePoolTest() {
+        assertDoesNotThrow(() -> {
+            // Contexts are created lazily, the source is never called
+            WeakReference<PooledJavaLognorm> pool = new WeakReference<>(new PooledJavaLognorm(() -> {
+                throw new IllegalStateException("no contexts expected");
+            }, 2, 0L));
+            // The sweep of a pool that was never closed does not keep it reachable
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.get() != null && System.nanoTime() < deadline) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            Assertions.assertNull(pool.get());
+        });
+    }
+
+    @Test
+    public void idleSweepTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (PooledJavaLognorm pooledJavaLognorm = new PooledJavaLognorm(lognormFactory, 2, 50L)) {
+                pooledJavaLognorm.normalize("offline");
+                Assertions.assertEquals(1, pooledJavaLognorm.idleContexts());
+                // Idle contexts are closed without further calls to the pool
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (pooledJavaLognorm.idleContexts() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assertions.assertEquals(0, pooledJavaLognorm.idleContexts());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeExceptionTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (PooledJavaLognorm pooledJavaLognorm = new PooledJavaLognorm(lognormFactory, 1, 60000L)) {
+                IllegalArgumentException e = Assertions
+                        .assertThrows(IllegalArgumentException.class, () -> pooledJavaLognorm.normalize("unparseable"));
+                Assertions
+                        .assertEquals(
+                                "ln_normalize() failed to perform extraction with error code: -1000", e.getMessage()
+                        );
+                // Context is still returned to the pool after a failed normalization
+                Assertions.assertEquals(1, pooledJavaLognorm.idleContexts());
+            }
+        });
+    }
+
+    @Test
+    public void closeTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            PooledJavaLognorm pooledJavaLognorm = new PooledJavaLognorm(lognormFactory, 2, 60000L);
+            pooledJavaLognorm.normalize("offline");
+            pooledJavaLognorm.close();
+            Assertions.assertEquals(0, pooledJavaLognorm.idleContexts());
+            IllegalStateException e = Assertions
+                    .assertThrows(IllegalStateException.class, () -> pooledJavaLognorm.normalize("offline"));
+            Assertions.assertEquals("PooledJavaLognorm is closed", e.getMessage());
+        });
+    }
+}
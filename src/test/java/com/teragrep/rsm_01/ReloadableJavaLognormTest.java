@@ -0,0 +1,139 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class ReloadableJavaLognormTest {
+
+    @Test
+    public void reloadTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (ReloadableJavaLognorm reloadable = new ReloadableJavaLognorm(lognormFactory, 2)) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", reloadable.normalize("offline"));
+                reloadable.reload("rule=:%other:rest%").get();
+                Assertions.assertEquals(2, reloadable.generation());
+                Assertions.assertEquals("{ \"other\": \"offline\" }", reloadable.normalize("offline"));
+            }
+        });
+    }
+
+    @Test
+    public void failedReloadTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (ReloadableJavaLognorm reloadable = new ReloadableJavaLognorm(lognormFactory, 2)) {
+                Assertions
+                        .assertThrows(
+                                ExecutionException.class,
+                                () -> reloadable.reload(new File("src/test/resources/nonexistent.rulebase")).get()
+                        );
+                // Old rulebase keeps serving
+                Assertions.assertEquals(1, reloadable.generation());
+                Assertions.assertEquals("{ \"all\": \"offline\" }", reloadable.normalize("offline"));
+            }
+        });
+    }
+
+    @Test
+    public void reloadDuringNormalizationTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            ExecutorService executorService = Executors.newFixedThreadPool(4);
+            AtomicBoolean running = new AtomicBoolean(true);
+            try (ReloadableJavaLognorm reloadable = new ReloadableJavaLognorm(lognormFactory, 4)) {
+                List<Future<Long>> futures = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    futures.add(executorService.submit(() -> {
+                        long count = 0;
+                        while (running.get()) {
+                            String s = reloadable.normalize("offline");
+                            Assertions.assertTrue(s.endsWith(": \"offline\" }"), s);
+                            count++;
+                        }
+                        return count;
+                    }));
+                }
+                for (int i = 0; i < 10; i++) {
+                    reloadable.reload(i % 2 == 0 ? "rule=:%other:rest%" : "rule=:%all:rest%").get();
+                }
+                running.set(false);
+                for (Future<Long> future : futures) {
+                    Assertions.assertTrue(future.get() > 0);
+                }
+                Assertions.assertEquals(11, reloadable.generation());
+            }
+            finally {
+                executorService.shutdown();
+            }
+        });
+    }
+
+    @Test
+    public void closeTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            ReloadableJavaLognorm reloadable = new ReloadableJavaLognorm(lognormFactory, 1);
+            reloadable.close();
+            IllegalStateException e = Assertions
+                    .assertThrows(IllegalStateException.class, () -> reloadable.normalize("offline"));
+            Assertions.assertEquals("ReloadableJavaLognorm is closed", e.getMessage());
+        });
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+class RulebaseRegistryTest {
+
+    @Test
+    public void sharedRulebaseTest() {
+        assertDoesNotThrow(() -> {
+            try (RulebaseRegistry registry = new RulebaseRegistry(new LognormFactory(""), Long.MAX_VALUE)) {
+                try (
+                        RulebaseRegistry.Lease first = registry.acquire("rule=:%all:rest%"); RulebaseRegistry.Lease second = registry.acquire("rule=:%all:rest%")
+                ) {
+                    Assertions.assertEquals(first.key(), second.key());
+                    try (JavaLognormImpl javaLognormImpl = second.lognorm()) {
+                        Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+                    }
+                    RulebaseStats stats = registry.stats().get(0);
+                    Assertions.assertEquals(2, stats.references());
+                    Assertions.assertEquals(1, stats.misses());
+                    Assertions.assertEquals(1, stats.hits());
+                    Assertions.assertEquals(0.5, stats.hitRate());
+                    Assertions.assertTrue(stats.resident());
+                    Assertions.assertEquals(stats.estimatedBytes(), registry.residentBytes());
+                }
+                Assertions.assertEquals(0, registry.stats().get(0).references());
+                Assertions.assertTrue(registry.stats().get(0).resident());
+            }
+        });
+    }
+
+    @Test
+    public void keyedRulebaseTest() {
+        assertDoesNotThrow(() -> {
+            try (RulebaseRegistry registry = new RulebaseRegistry(new LognormFactory(""), Long.MAX_VALUE)) {
+                try (
+                        RulebaseRegistry.Lease first = registry.acquire("all-v1", "rule=:%all:rest%"); RulebaseRegistry.Lease second = registry.acquire("all-v1", "rule=:%all:rest%"); RulebaseRegistry.Lease hashed = registry.acquire("rule=:%all:rest%")
+                ) {
+                    Assertions.assertEquals("key:all-v1", first.key());
+                    Assertions.assertEquals(first.key(), second.key());
+                    // Keys given by the caller do not share rulebases with content hashes
+                    Assertions.assertNotEquals(first.key(), hashed.key());
+                    Assertions.assertEquals(2, registry.stats().size());
+                    Assertions.assertEquals(1, registry.stats().get(0).hits());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void evictionTest() {
+        assertDoesNotThrow(() -> {
+            // Budget fits a single small rulebase
+            long budget = NativeMemoryTracker.contextBytes(64);
+            try (RulebaseRegistry registry = new RulebaseRegistry(new LognormFactory(""), budget)) {
+                try (RulebaseRegistry.Lease lease = registry.acquire("rule=:%all:rest%")) {
+                    // Rulebases in use are not evicted even over the budget, the evicted rulebase is forgotten
+                    registry.acquire("rule=:Quantity: %N:number%").close();
+                    Assertions.assertEquals(1, registry.stats().size());
+                    Assertions.assertTrue(registry.stats().get(0).resident());
+                    try (JavaLognormImpl javaLognormImpl = lease.lognorm()) {
+                        Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+                    }
+                }
+                try (RulebaseRegistry.Lease lease = registry.acquire("rule=:Quantity: %N:number%")) {
+                    // Least recently used rulebase is evicted to make room
+                    List<RulebaseStats> stats = registry.stats();
+                    Assertions.assertEquals(1, stats.size());
+                    Assertions.assertEquals(lease.key(), stats.get(0).key());
+                    Assertions.assertTrue(stats.get(0).resident());
+                    Assertions.assertEquals(1, stats.get(0).misses());
+                    Assertions.assertEquals(stats.get(0).estimatedBytes(), registry.residentBytes());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void fileRulebaseTest(@TempDir File directory) {
+        assertDoesNotThrow(() -> {
+            File rulebase = new File(directory, "test.rulebase");
+            Files.write(rulebase.toPath(), "rule=:%all:rest%\n".getBytes(StandardCharsets.UTF_8));
+            try (RulebaseRegistry registry = new RulebaseRegistry(new LognormFactory(""), Long.MAX_VALUE)) {
+                String key;
+                try (RulebaseRegistry.Lease lease = registry.acquire(rulebase)) {
+                    key = lease.key();
+                }
+                Files.write(rulebase.toPath(), "rule=:Quantity: %N:number%\n".getBytes(StandardCharsets.UTF_8));
+                Assertions.assertTrue(rulebase.setLastModified(rulebase.lastModified() + 2000));
+                try (RulebaseRegistry.Lease lease = registry.acquire(rulebase)) {
+                    // Modified file is a rulebase of its own
+                    Assertions.assertNotEquals(key, lease.key());
+                    try (JavaLognormImpl javaLognormImpl = lease.lognorm()) {
+                        Assertions.assertEquals("{ \"N\": \"1\" }", javaLognormImpl.normalize("Quantity: 1"));
+                    }
+                }
+                // Earlier version of the file is evicted and forgotten
+                Assertions.assertEquals(1, registry.stats().size());
+            }
+            RulebaseRegistry closed = new RulebaseRegistry(new LognormFactory(""), Long.MAX_VALUE);
+            closed.close();
+            Assertions.assertThrows(IllegalStateException.class, () -> closed.acquire(rulebase));
+        });
+    }
+
+    @Test
+    public void evictedContextTest() {
+        assertDoesNotThrow(() -> {
+            long budget = NativeMemoryTracker.contextBytes(64);
+            try (RulebaseRegistry registry = new RulebaseRegistry(new LognormFactory(""), budget)) {
+                JavaLognormImpl javaLognormImpl;
+                long bytes;
+                try (RulebaseRegistry.Lease lease = registry.acquire("rule=:%all:rest%")) {
+                    javaLognormImpl = lease.lognorm();
+                    bytes = registry.residentBytes();
+                }
+                try (RulebaseRegistry.Lease lease = registry.acquire("rule=:Quantity: %N:number%")) {
+                    // Evicted rulebase stays loaded for its open context and is counted against the budget
+                    List<RulebaseStats> stats = registry.stats();
+                    Assertions.assertEquals(2, stats.size());
+                    Assertions.assertFalse(stats.get(0).resident());
+                    Assertions.assertEquals(bytes + stats.get(1).estimatedBytes(), registry.residentBytes());
+                    Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+                    javaLognormImpl.close();
+                    Assertions.assertEquals(stats.get(1).estimatedBytes(), registry.residentBytes());
+                    Assertions.assertEquals(lease.key(), registry.stats().get(0).key());
+                }
+            }
+        });
+    }
+}
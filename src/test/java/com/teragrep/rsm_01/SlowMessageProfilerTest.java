@@ -0,0 +1,124 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+class SlowMessageProfilerTest {
+
+    @Test
+    public void slowestTest() {
+        SlowMessageProfiler profiler = new SlowMessageProfiler(2, 1);
+        profiler.record("a", 10_000_000_000L, 0, "", "");
+        profiler.record("b", 30_000_000_000L, 0, "", "");
+        profiler.record("c", 20_000_000_000L, -1000, "", "");
+        profiler.record("d", 5_000_000_000L, 0, "", "");
+        List<SlowMessage> slowest = profiler.slowest();
+        Assertions.assertEquals(2, slowest.size());
+        Assertions.assertEquals("b", slowest.get(0).text());
+        Assertions.assertEquals("c", slowest.get(1).text());
+        Assertions.assertEquals(-1000, slowest.get(1).returnCode());
+        // Buffer is full, faster calls are discarded before reading the rule
+        Assertions.assertTrue(profiler.slowNanos(System.nanoTime()) < 0);
+        profiler.reset();
+        Assertions.assertTrue(profiler.slowest().isEmpty());
+    }
+
+    @Test
+    public void truncateTest() {
+        SlowMessageProfiler profiler = new SlowMessageProfiler(1, 1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SlowMessageProfiler.MAX_TEXT_LENGTH + 10; i++) {
+            text.append('x');
+        }
+        profiler.record(text.toString(), 10, 0, "", "");
+        SlowMessage slowMessage = profiler.slowest().get(0);
+        Assertions.assertEquals(SlowMessageProfiler.MAX_TEXT_LENGTH, slowMessage.text().length());
+        Assertions.assertEquals(SlowMessageProfiler.MAX_TEXT_LENGTH + 10, slowMessage.length());
+    }
+
+    @Test
+    public void disabledTest() {
+        SlowMessageProfiler profiler = SlowMessageProfiler.disabled();
+        Assertions.assertFalse(profiler.isEnabled());
+        Assertions.assertTrue(profiler.slowNanos(profiler.start()) < 0);
+        Assertions.assertEquals(0, profiler.sampled());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SlowMessageProfiler(10, 0));
+    }
+
+    @Test
+    public void profileNormalizeTest() {
+        assertDoesNotThrow(() -> {
+            LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+            opts.CTXOPT_ADD_RULE = true;
+            SlowMessageProfiler profiler = new SlowMessageProfiler(3, 1);
+            LognormFactory lognormFactory = new LognormFactory(opts, "rule=:Quantity: %N:number%")
+                    .withProfiler(profiler);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                javaLognormImpl.normalize("Quantity: 1");
+                javaLognormImpl.tryNormalize("unparseable");
+            }
+            Assertions.assertEquals(2, profiler.sampled());
+            List<SlowMessage> slowest = profiler.slowest();
+            Assertions.assertEquals(2, slowest.size());
+            for (SlowMessage slowMessage : slowest) {
+                if (slowMessage.returnCode() == 0) {
+                    Assertions.assertEquals("Quantity: 1", slowMessage.text());
+                    Assertions.assertEquals("Quantity: %N:number%", slowMessage.rule());
+                }
+                else {
+                    Assertions.assertEquals("unparseable", slowMessage.text());
+                    Assertions.assertEquals("", slowMessage.rule());
+                }
+            }
+        });
+    }
+}